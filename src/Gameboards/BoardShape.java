@@ -0,0 +1,336 @@
+/**
+ * The class BoardShape holds the tables that only depend on
+ * the dimensions of a board (lines, columns and sizeWin):
+ * its symmetries, its winning lines, its Zobrist keys and,
+ * for small boards, the weights used to rank positions.
+ * They are computed once per shape and shared by every
+ * TicTacToeGame of that shape.
+ */
+
+package src.Gameboards;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.ConcurrentHashMap;
+import src.common.*;
+
+public final class BoardShape {
+
+	//All the shapes built so far, keyed by pack(lines, columns, sizeWin)
+	 private static final Map<Long, BoardShape> shapes = new ConcurrentHashMap<Long, BoardShape>();
+
+	//The shape returned by the last call to of(), so that building game after game of the same shape
+	//does not go through the map
+	 private static volatile BoardShape last;
+
+	 public final int lines;
+	 public final int columns;
+	 public final int sizeWin;
+
+	//Number of cells on the board
+	 public final int cells;
+
+	//Number of longs needed to store one player's bitboard
+	 public final int words;
+
+	/**
+	 * symmetries[s] is the permutation of symmetry s. The cell at
+	 * index i of the transformed board is the cell at index
+	 * symmetries[s][i] of the original board. Symmetry 0 is the
+	 * identity; a square board then has its 3 rotations, the
+	 * horizontal flip of the last rotation and its 3 rotations, and
+	 * any other board has the horizontal flip, the flip on both
+	 * axes, and the vertical flip.
+	 * The tables are never modified nor exposed, so they are safe
+	 * to read from any thread.
+	 */
+	 private final int[][] symmetries;
+
+	//inverses[s] is the symmetry that undoes symmetry s
+	 private final int[] inverses;
+
+	//compositions[s][t] is the symmetry u such that symmetries[u][i] == symmetries[s][symmetries[t][i]]
+	 private final int[][] compositions;
+
+	//Every run of sizeWin aligned cells, as a bitmask: the words of line l start at index l*words
+	 private final long[] lineMasks;
+
+	//cellLines[i] lists the lines that go through the cell at index i
+	 private final int[][] cellLines;
+
+	//Seed of the Zobrist keys, fixed so that hashes are the same from one run to the next
+	 private static final long ZOBRIST_SEED = 0x6D656E616365L;
+
+	/**
+	 * zobristKeys[(s*2 + player)*cells + i] is the random key of the
+	 * given player (0 for X, 1 for O) on the cell at index i, as
+	 * seen through symmetry s: it is the key of the cell where i
+	 * ends up once symmetry s is applied to the board.
+	 */
+	 private final long[] zobristKeys;
+
+	//Largest number of cells for which every position has a rank that fits in an int (3^19 < 2^31)
+	 public static final int MAX_RANKED_CELLS = 19;
+
+	//rankWeights[i] is 3 to the power i, null if the board has more than MAX_RANKED_CELLS cells
+	 private final int[] rankWeights;
+
+	 private BoardShape(int lines, int columns, int sizeWin){
+		 if(lines < 1 || columns < 1 || sizeWin < 1){
+			 throw new IllegalArgumentException("Illegal board shape: " + lines + "x" + columns + ", " + sizeWin + " to win");
+		 }
+		 this.lines = lines;
+		 this.columns = columns;
+		 this.sizeWin = sizeWin;
+		 cells = lines*columns;
+		 words = (cells + 63) >>> 6;
+
+		 //Applies the transformations one after the other to the identity permutation
+		 int[] transform = new int[cells];
+		 for(int i = 0; i < cells; i++){
+			 transform[i] = i;
+		 }
+		 if(lines == columns){
+			 symmetries = new int[8][];
+			 for(int s = 0; s < 8; s++){
+				 if(s == 4){
+					 Utils.horizontalFlip(lines, columns, transform);
+				 } else if(s > 0){
+					 Utils.rotate(lines, columns, transform);
+				 }
+				 symmetries[s] = transform.clone();
+			 }
+		 } else {
+			 symmetries = new int[4][];
+			 for(int s = 0; s < 4; s++){
+				 if(s == 2){
+					 Utils.verticalFlip(lines, columns, transform);
+				 } else if(s > 0){
+					 Utils.horizontalFlip(lines, columns, transform);
+				 }
+				 symmetries[s] = transform.clone();
+			 }
+		 }
+
+		 //The symmetries form a group, so every composition is itself one of the symmetries
+		 int count = symmetries.length;
+		 inverses = new int[count];
+		 compositions = new int[count][count];
+		 int[] composed = new int[cells];
+		 for(int s = 0; s < count; s++){
+			 for(int t = 0; t < count; t++){
+				 for(int i = 0; i < cells; i++){
+					 composed[i] = symmetries[s][symmetries[t][i]];
+				 }
+				 compositions[s][t] = indexOf(composed);
+				 if(compositions[s][t] == 0){
+					 inverses[s] = t;
+				 }
+			 }
+		 }
+
+		 //Lists the winning lines starting from each cell, going right, down, down-right and down-left
+		 int[][] directions = {{0,1},{1,0},{1,1},{1,-1}};
+		 long[] masks = new long[directions.length*cells*words];
+		 int[] cellLineCount = new int[cells];
+		 int lineCount = 0;
+		 for(int line = 0; line < lines; line++){
+			 for(int column = 0; column < columns; column++){
+				 for(int[] direction: directions){
+					 int lastLine = line + (sizeWin-1)*direction[0];
+					 int lastColumn = column + (sizeWin-1)*direction[1];
+					 if(lastLine >= lines || lastColumn < 0 || lastColumn >= columns){
+						 continue;
+					 }
+					 for(int k = 0; k < sizeWin; k++){
+						 int cell = (line + k*direction[0])*columns + column + k*direction[1];
+						 masks[lineCount*words + (cell >>> 6)] |= 1L << (cell & 63);
+						 cellLineCount[cell]++;
+					 }
+					 lineCount++;
+				 }
+			 }
+		 }
+		 lineMasks = Arrays.copyOf(masks, lineCount*words);
+		 cellLines = new int[cells][];
+		 for(int i = 0; i < cells; i++){
+			 cellLines[i] = new int[cellLineCount[i]];
+			 cellLineCount[i] = 0;
+		 }
+		 for(int l = 0; l < lineCount; l++){
+			 for(int i = 0; i < cells; i++){
+				 if((lineMasks[l*words + (i >>> 6)] & (1L << (i & 63))) != 0){
+					 cellLines[i][cellLineCount[i]++] = l;
+				 }
+			 }
+		 }
+
+		 //Draws one key per player and cell, then lays it out again for every symmetry
+		 SplittableRandom random = new SplittableRandom(ZOBRIST_SEED ^ (((long)lines << 40) | ((long)columns << 20) | sizeWin));
+		 long[] keys = new long[2*cells];
+		 for(int i = 0; i < keys.length; i++){
+			 keys[i] = random.nextLong();
+		 }
+		 zobristKeys = new long[count*2*cells];
+		 for(int s = 0; s < count; s++){
+			 for(int player = 0; player < 2; player++){
+				 for(int i = 0; i < cells; i++){
+					 zobristKeys[(s*2 + player)*cells + i] = keys[player*cells + symmetries[inverses[s]][i]];
+				 }
+			 }
+		 }
+
+		 if(cells <= MAX_RANKED_CELLS){
+			 rankWeights = new int[cells];
+			 for(int i = 0; i < cells; i++){
+				 rankWeights[i] = (i == 0) ? 1 : 3*rankWeights[i-1];
+			 }
+		 } else {
+			 rankWeights = null;
+		 }
+	 }
+
+	 //Helper method returning the index of the symmetry with the given permutation
+	 private int indexOf(int[] permutation){
+		 for(int s = 0; s < symmetries.length; s++){
+			 if(Arrays.equals(symmetries[s], permutation)){
+				 return s;
+			 }
+		 }
+		 throw new IllegalStateException("Symmetries of a " + lines + "x" + columns + " board are not closed");
+	 }
+
+	/**
+	 * returns the shared BoardShape for the given dimensions,
+	 * building it the first time it is requested.
+	 */
+	 public static BoardShape of(int lines, int columns, int sizeWin){
+		 BoardShape shape = last;
+		 if(shape != null && shape.lines == lines && shape.columns == columns && shape.sizeWin == sizeWin){
+			 return shape;
+		 }
+		 shape = shapes.computeIfAbsent(pack(lines, columns, sizeWin), k -> new BoardShape(lines, columns, sizeWin));
+		 last = shape;
+		 return shape;
+	 }
+
+	//Packs the dimensions of a board into a single long, 21 bits each, to key the shared tables of that board
+	 static long pack(int lines, int columns, int sizeWin){
+		 if(lines < 1 || columns < 1 || sizeWin < 1 || (lines | columns | sizeWin) >= (1 << 21)){
+			 throw new IllegalArgumentException("Illegal board shape: " + lines + "x" + columns + ", " + sizeWin + " to win");
+		 }
+		 return ((long)lines << 42) | ((long)columns << 21) | sizeWin;
+	 }
+
+	//Number of symmetries of the board: 8 for a square board, 4 otherwise
+	 public int symmetryCount(){
+		 return symmetries.length;
+	 }
+
+	/**
+	 * returns the index of the cell of the original board
+	 * that ends up at index i once symmetry s is applied.
+	 */
+	 public int symmetricCell(int s, int i){
+		 return symmetries[s][i];
+	 }
+
+	/**
+	 * returns the symmetry that undoes symmetry s.
+	 */
+	 public int inverse(int s){
+		 return inverses[s];
+	 }
+
+	/**
+	 * returns the symmetry u equivalent to applying s to
+	 * a board and then t to the result, that is
+	 * symmetricCell(u, i) == symmetricCell(s, symmetricCell(t, i))
+	 */
+	 public int compose(int s, int t){
+		 return compositions[s][t];
+	 }
+
+	//Number of winning lines on the board
+	 public int lineCount(){
+		 return lineMasks.length/words;
+	 }
+
+	//Number of winning lines that go through the cell at index i
+	 public int linesThrough(int i){
+		 return cellLines[i].length;
+	 }
+
+	/**
+	 * checks if the bitboard passed as parameter holds a full
+	 * winning line going through the cell at index i. Only the
+	 * few lines that contain that cell are tested.
+	 * @param i
+	 *  the index of the cell that has just been played
+	 * @param bits
+	 *  the bitboard of the player who played it
+	 * @return
+	 *  true iff a line through cell i is complete in bits
+	 */
+	 public boolean completesLine(int i, long[] bits){
+		 if(words == 1){
+			 return completesLine(i, bits[0]);
+		 }
+		 for(int line: cellLines[i]){
+			 int base = line*words;
+			 int w = 0;
+			 while(w < words && (bits[w] & lineMasks[base + w]) == lineMasks[base + w]){
+				 w++;
+			 }
+			 if(w == words){
+				 return true;
+			 }
+		 }
+		 return false;
+	 }
+
+	//Same as above for a board of at most 64 cells, whose bitboard is a single long
+	 public boolean completesLine(int i, long bits){
+		 for(int line: cellLines[i]){
+			 if((bits & lineMasks[line]) == lineMasks[line]){
+				 return true;
+			 }
+		 }
+		 return false;
+	 }
+
+	/**
+	 * returns the Zobrist key of a player on the cell at index i,
+	 * as seen through symmetry s. The hash of a board under
+	 * symmetry s is the xor of these keys over its occupied cells.
+	 * @param player
+	 *  0 for X, 1 for O
+	 */
+	 public long zobristKey(int s, int player, int i){
+		 return zobristKeys[(s*2 + player)*cells + i];
+	 }
+
+	//Checks if the positions of this shape can be ranked, that is if it has at most MAX_RANKED_CELLS cells
+	 public boolean isRanked(){
+		 return rankWeights != null;
+	 }
+
+	/**
+	 * returns the weight of the cell at index i in the rank of a
+	 * position: 3 to the power i. A position is ranked as the
+	 * number written in base 3 with one digit per cell, 0 for
+	 * EMPTY, 1 for X and 2 for O, cell 0 being the lowest digit.
+	 * Requires that isRanked() == true
+	 */
+	 public int rankWeight(int i){
+		 if(rankWeights == null){
+			 throw new IllegalStateException("Positions of a " + lines + "x" + columns + " board cannot be ranked");
+		 }
+		 return rankWeights[i];
+	 }
+
+	//Number of possible ranks, 3 to the power cells. Requires that isRanked() == true
+	 public int rankCount(){
+		 return 3*rankWeight(cells-1);
+	 }
+}
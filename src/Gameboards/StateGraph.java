@@ -0,0 +1,265 @@
+/**
+ * The class StateGraph enumerates every state of the game that
+ * can be reached from an empty board, up to symmetry. Each
+ * state is stored once, in its canonical form, and is
+ * identified by an id: the ids of a layer (the states with
+ * the same level) are consecutive, and layers are stored by
+ * increasing level.
+ *
+ * The graph also holds its transitions: for every state id
+ * and every cell of its canonical form, the id of the state
+ * reached by playing that cell, so that walking the graph
+ * never needs to build or compare boards.
+ *
+ * A StateGraph is immutable once built, so a single instance
+ * per board shape is shared by every player. Players keep their
+ * own data about each state (beads, outcomes...) in arrays
+ * indexed by state id.
+ */
+
+package src.Gameboards;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import src.common.*;
+
+public final class StateGraph {
+
+	//All the graphs built so far, keyed by BoardShape.pack(lines, columns, sizeWin)
+	 private static final Map<Long, StateGraph> graphs = new ConcurrentHashMap<Long, StateGraph>();
+
+	 public final BoardShape shape;
+
+	//Canonical key of every state, by id
+	 private final StateKey[] keys;
+
+	//Game state of every state, by id
+	 private final GameState[] gameStates;
+
+	//The ids of layer l go from layerStart[l] (included) to layerStart[l+1] (excluded)
+	 private final int[] layerStart;
+
+	//Maps the canonical key of a state to its id
+	 private final HashMap<StateKey, Integer> ids;
+
+	//children[id*cells + cell] is the id of the state reached by playing cell in the canonical form
+	//of state id, or -1 if the cell is not empty or the game is over
+	 private final int[] children;
+
+	//childSymmetries[id*cells + cell] is the canonical symmetry of the board reached by that move
+	 private final byte[] childSymmetries;
+
+	//Largest number of cells for which the graph indexes every raw position by rank (3^12 ints take 2MB)
+	 public static final int MAX_RANK_INDEXED_CELLS = 12;
+
+	//rankIndex[rank] is (id << 3) | s for the state reached from the position with that rank by
+	//symmetry s, or -1 if the position is not reachable. Null on boards with too many cells
+	 private final int[] rankIndex;
+
+	 private StateGraph(BoardShape shape){
+		 this.shape = shape;
+
+		 ArrayList<StateKey> allKeys = new ArrayList<StateKey>();
+		 ArrayList<GameState> allStates = new ArrayList<GameState>();
+		 int[] allChildren = new int[shape.cells];
+		 byte[] allChildSymmetries = new byte[shape.cells];
+		 int transitions = 0;
+		 ids = new HashMap<StateKey, Integer>();
+		 layerStart = new int[shape.cells + 2];
+
+		 //Build the layers one after the other, expanding the canonical form of every
+		 //state still in progress in the previous layer
+		 ArrayList<TicTacToeGame> layer = new ArrayList<TicTacToeGame>();
+		 layer.add(new TicTacToeGame(shape.lines, shape.columns, shape.sizeWin));
+		 add(layer.get(0), allKeys, allStates);
+		 for(int level = 1; level <= shape.cells; level++){
+			 layerStart[level] = allKeys.size();
+			 ArrayList<TicTacToeGame> newLayer = new ArrayList<TicTacToeGame>();
+			 for(TicTacToeGame game: layer){
+				 if(transitions + shape.cells > allChildren.length){
+					 allChildren = Arrays.copyOf(allChildren, 2*allChildren.length);
+					 allChildSymmetries = Arrays.copyOf(allChildSymmetries, 2*allChildSymmetries.length);
+				 }
+				 for(int cell = 0; cell < shape.cells; cell++, transitions++){
+					 if(game.getGameState() != GameState.PLAYING || game.valueAt(cell) != CellValue.EMPTY){
+						 allChildren[transitions] = -1;
+						 continue;
+					 }
+					 TicTacToeGame newGame = new TicTacToeGame(game, cell);
+					 if(!ids.containsKey(newGame.canonicalKey())){
+						 add(newGame, allKeys, allStates);
+						 newLayer.add(new TicTacToeGame(shape, newGame.canonicalKey()));
+					 }
+					 allChildren[transitions] = ids.get(newGame.canonicalKey());
+					 allChildSymmetries[transitions] = (byte)newGame.canonicalSymmetry();
+				 }
+			 }
+			 layer = newLayer;
+		 }
+		 layerStart[shape.cells + 1] = allKeys.size();
+
+		 //The states of the last layer have no children
+		 children = Arrays.copyOf(allChildren, allKeys.size()*shape.cells);
+		 childSymmetries = Arrays.copyOf(allChildSymmetries, children.length);
+		 Arrays.fill(children, transitions, children.length, -1);
+
+		 keys = allKeys.toArray(new StateKey[allKeys.size()]);
+		 gameStates = allStates.toArray(new GameState[allStates.size()]);
+
+		 //Every orientation of every state gets an entry, so that a live position is found
+		 //without computing its canonical form
+		 if(shape.cells <= MAX_RANK_INDEXED_CELLS){
+			 rankIndex = new int[shape.rankCount()];
+			 Arrays.fill(rankIndex, -1);
+			 for(int id = 0; id < keys.length; id++){
+				 for(int s = 0; s < shape.symmetryCount(); s++){
+					 int rank = 0;
+					 for(int i = 0; i < shape.cells; i++){
+						 CellValue value = keys[id].valueAt(i);
+						 if(value != CellValue.EMPTY){
+							 rank += (value == CellValue.X ? 1 : 2)*shape.rankWeight(shape.symmetricCell(s, i));
+						 }
+					 }
+					 rankIndex[rank] = (id << 3) | s;
+				 }
+			 }
+		 } else {
+			 rankIndex = null;
+		 }
+	 }
+
+	 //Helper method that gives the next id to a new state
+	 private void add(TicTacToeGame game, ArrayList<StateKey> allKeys, ArrayList<GameState> allStates){
+		 ids.put(game.canonicalKey(), allKeys.size());
+		 allKeys.add(game.canonicalKey());
+		 allStates.add(game.getGameState());
+	 }
+
+	/**
+	 * returns the shared StateGraph for the given dimensions,
+	 * building it the first time it is requested.
+	 */
+	 public static StateGraph of(int lines, int columns, int sizeWin){
+		 return graphs.computeIfAbsent(BoardShape.pack(lines, columns, sizeWin), k -> new StateGraph(BoardShape.of(lines, columns, sizeWin)));
+	 }
+
+	//Number of states in the graph
+	 public int size(){
+		 return keys.length;
+	 }
+
+	//First id of the layer of the given level
+	 public int layerStart(int level){
+		 return layerStart[level];
+	 }
+
+	//Id following the last id of the layer of the given level
+	 public int layerEnd(int level){
+		 return layerStart[level + 1];
+	 }
+
+	/**
+	 * returns the id of the state equal, up to symmetry,
+	 * to the game passed as parameter. On small boards this
+	 * is a single array access with the rank of the game.
+	 * @param game
+	 *  a game with the same shape as this graph
+	 * @return
+	 *  the id of the state, or -1 if it is not in the graph
+	 */
+	 public int indexOf(TicTacToeGame game){
+		 if(game.getShape() != shape){
+			 throw new IllegalArgumentException("Game shape does not match the graph");
+		 }
+		 if(rankIndex != null){
+			 int entry = rankIndex[game.rank()];
+			 return (entry == -1) ? -1 : entry >>> 3;
+		 }
+		 Integer id = ids.get(game.canonicalKey());
+		 return (id == null) ? -1 : id;
+	 }
+
+	/**
+	 * returns the id of the state with the given canonical key.
+	 * @return
+	 *  the id of the state, or -1 if the key is not the canonical
+	 *  key of a state of the graph
+	 */
+	 public int indexOf(StateKey key){
+		 Integer id = ids.get(key);
+		 return (id == null) ? -1 : id;
+	 }
+
+	/**
+	 * returns a symmetry that turns the game passed as parameter
+	 * into the state indexOf(game): the cell at index i of that
+	 * state is the cell at index shape.symmetricCell(s, i) of game.
+	 * @param game
+	 *  a game of the graph, with the same shape
+	 * @return
+	 *  the index of the symmetry
+	 */
+	 public int symmetryOf(TicTacToeGame game){
+		 if(rankIndex != null && rankIndex[game.rank()] != -1){
+			 return rankIndex[game.rank()] & 7;
+		 }
+		 return game.canonicalSymmetry();
+	 }
+
+	//Canonical key of the state with the given id
+	 public StateKey key(int id){
+		 return keys[id];
+	 }
+
+	//Level of the state with the given id
+	 public int getLevel(int id){
+		 int level = 0;
+		 while(layerStart[level + 1] <= id){
+			 level++;
+		 }
+		 return level;
+	 }
+
+	//Game state of the state with the given id
+	 public GameState getGameState(int id){
+		 return gameStates[id];
+	 }
+
+	//Value of the cell at index i of the state with the given id
+	 public CellValue valueAt(int id, int i){
+		 return keys[id].valueAt(i);
+	 }
+
+	/**
+	 * returns the id of the state reached by playing the cell
+	 * at index i of the canonical form of the state with the
+	 * given id.
+	 * @return
+	 *  the id of the child, or -1 if the cell is not empty or
+	 *  the game is over
+	 */
+	 public int child(int id, int i){
+		 return children[id*shape.cells + i];
+	 }
+
+	/**
+	 * returns the symmetry that turns the board reached by playing
+	 * the cell at index i of the canonical form of the state with the
+	 * given id into the canonical form of child(id, i). If a game has
+	 * canonical symmetry s and the matching cell is played on it, the
+	 * new canonical symmetry of the game is shape.compose(s, childSymmetry(id, i)).
+	 */
+	 public int childSymmetry(int id, int i){
+		 return childSymmetries[id*shape.cells + i];
+	 }
+
+	/**
+	 * returns a new game holding the canonical form of the
+	 * state with the given id, which the caller is free to play on.
+	 */
+	 public TicTacToeGame game(int id){
+		 return new TicTacToeGame(shape, keys[id]);
+	 }
+}
@@ -0,0 +1,109 @@
+/**
+ * The class StateKey is an immutable encoding of a board:
+ * the X bitboard followed by the O bitboard. Keys built by
+ * TicTacToeGame.canonicalKey() are the smallest encoding over
+ * all the symmetries of the board, so two games have the same
+ * canonical key iff they are equal up to symmetry.
+ */
+
+package src.Gameboards;
+import java.util.Arrays;
+import src.common.*;
+
+public final class StateKey implements Comparable<StateKey> {
+
+	//X words then O words, never modified after construction
+	 private final long[] bits;
+
+	 private final int hash;
+
+	//Builds a key from an encoding (X words then O words), which is copied
+	 StateKey(long[] encoding){
+		 bits = encoding.clone();
+		 hash = Arrays.hashCode(bits);
+	 }
+
+	//Builds the key of a board of at most 64 cells from its X word and its O word
+	 StateKey(long xWord, long oWord){
+		 bits = new long[] { xWord, oWord };
+		 hash = Arrays.hashCode(bits);
+	 }
+
+	/**
+	 * returns the key with the given encoding (X words then O
+	 * words), for instance read back from a file. The encoding
+	 * is copied.
+	 */
+	 public static StateKey of(long[] encoding){
+		 if(encoding.length == 0 || encoding.length % 2 != 0){
+			 throw new IllegalArgumentException("Illegal encoding length: " + encoding.length);
+		 }
+		 return new StateKey(encoding);
+	 }
+
+	//Number of words of the encoding, X words then O words
+	 public int length(){
+		 return bits.length;
+	 }
+
+	//Word w of the encoding
+	 public long word(int w){
+		 return bits[w];
+	 }
+
+	/**
+	 * returns the value of the cell at index i
+	 * in the board encoded by this key.
+	 */
+	 public CellValue valueAt(int i){
+		 int words = bits.length/2;
+		 if((i >>> 6) >= words){
+			 throw new IllegalArgumentException("Illegal position: " + i);
+		 }
+		 if((bits[i >>> 6] & (1L << (i & 63))) != 0){
+			 return CellValue.X;
+		 }
+		 if((bits[words + (i >>> 6)] & (1L << (i & 63))) != 0){
+			 return CellValue.O;
+		 }
+		 return CellValue.EMPTY;
+	 }
+
+	 public boolean equals(Object o){
+		 if(o == this){
+			 return true;
+		 }
+		 if(!(o instanceof StateKey)){
+			 return false;
+		 }
+		 StateKey other = (StateKey)o;
+		 return hash == other.hash && Arrays.equals(bits, other.bits);
+	 }
+
+	 public int hashCode(){
+		 return hash;
+	 }
+
+	//Orders keys word by word, as unsigned numbers
+	 public int compareTo(StateKey other){
+		 return compare(bits, other.bits);
+	 }
+
+	//Helper method comparing two encodings of the same length
+	 static int compare(long[] a, long[] b){
+		 for(int i = 0; i < a.length; i++){
+			 if(a[i] != b[i]){
+				 return Long.compareUnsigned(a[i], b[i]);
+			 }
+		 }
+		 return 0;
+	 }
+
+	 public String toString(){
+		 StringBuilder res = new StringBuilder();
+		 for(int i = bits.length-1; i >= 0; i--){
+			 res.append(String.format("%016x", bits[i]));
+		 }
+		 return res.toString();
+	 }
+}
@@ -9,12 +9,17 @@
  */
 
 package src.Gameboards;
+import java.util.Arrays;
 import src.common.*;
 
 public class TicTacToeGame {
 
-	//The game board, stored in an array
-	 private CellValue[] board;
+	//The game board, stored as one bitmask per player. Cell i is bit (i%64) of word (i/64). A board of
+	//at most 64 cells, such as 3x3, is kept in xBits and oBits instead, xBoard and oBoard then being null
+	 private long[] xBoard;
+	 private long[] oBoard;
+	 private long xBits;
+	 private long oBits;
  
  
 	//Records the number of rounds played so far, starting at 0
@@ -23,6 +28,20 @@ public class TicTacToeGame {
 	//Records the current state of the game using the GameState enum
 	 private GameState gameState;
  
+	//Records the cells played so far, in order: moves[k] is the cell played at level k
+	 private int[] moves;
+ 
+	//Records the level at which the game stopped PLAYING, or 0 while it is still going on
+	 private int finishedAt;
+ 
+	//zobrist[s] is the Zobrist hash of the board under symmetry s, null until a hash is first requested
+	//and then updated on every move. A game built from another one starts without it
+	 private long[] zobrist;
+ 
+	//Base 3 rank of the board (see BoardShape.rankWeight), updated on every move. Only kept
+	//when the shape is ranked
+	 private int rank;
+ 
  
 	//Lists the number of rows in the grid (In this MENACE implementation, it is usually 3)
 	 public final int lines;
@@ -34,23 +53,27 @@ public class TicTacToeGame {
 	//Determines the amount of X's or O's that need to be in a row to win, this is usually 3
 	 public final int sizeWin;
  
+	//The tables shared by every game with the same lines, columns and sizeWin
+	 private final BoardShape shape;
  
+	//Cached canonical form of the board, null until first requested. It is replaced
+	//as a whole, so a reader never sees a key paired with the wrong symmetry
+	 private Canonical canonical;
  
-	 /**
-	  * transformedBoard is used to iterate through all
-	  * game symetries. We use an indirection, so as to not
-	  * modify the instance variable board. In the
-	  * current symmetry the cell at index i is accessed
-	  * via board[transformedBoard[i]]
-	  */
-	 protected int[] transformedBoard;
- 
-	 //Specifies maximum allowable symmetry depth.
-	 private int MAX_SYMMETRY_DEPTH;
+	 //The symmetries of the board are the permutations held by the shared BoardShape: in symmetry s
+	 //the cell at index i is the cell at index shape.symmetricCell(s, i) of the board. Games never keep
+	 //a current symmetry of their own, so comparing or reading a game does not modify it.
  
-	 //Variable to keep track of symmetry depth.
-	 private int symmetryDepth;
+	 //Immutable pair of a canonical key and the symmetry that produces it
+	 private static final class Canonical {
+		 final StateKey key;
+		 final int symmetry;
  
+		 Canonical(StateKey key, int symmetry){
+			 this.key = key;
+			 this.symmetry = symmetry;
+		 }
+	 }
  
 	
 	 //Default constructor, for a game of 3x3, which must align 3 cells
@@ -65,29 +88,23 @@ public class TicTacToeGame {
  
 	//Constructor that allows definition of the number of rows, columns, and the number of X's or O's needed to win
 	 public TicTacToeGame(int lines, int columns, int sizeWin){
-		 this.lines = lines;
-		 this.columns = columns;
-		 this.sizeWin = sizeWin;
-		 board = new CellValue[lines*columns];
-		 for(int i = 0; i < lines*columns ; i ++) {
-			 board[i] = CellValue.EMPTY;
+		 this(BoardShape.of(lines, columns, sizeWin));
+	 }
+
+	//Constructor for an empty board of the given shape, which does not look the shape up again
+	 public TicTacToeGame(BoardShape shape){
+		 lines = shape.lines;
+		 columns = shape.columns;
+		 sizeWin = shape.sizeWin;
+		 this.shape = shape;
+		 if(shape.words > 1){
+			 xBoard = new long[shape.words];
+			 oBoard = new long[shape.words];
 		 }
 		 level = 0;
 		 gameState = GameState.PLAYING;
- 
-		 //Creates int array of required size.
-		 transformedBoard = new int[lines*columns];
- 
-		 //Fills in transformedBoard with default values.
-		 this.reset();
- 
-		 //Sets maximum symmetry depth depending on game board shape. Essentially, this distinction exists to widen the parameters
-		 //of symmetry checking in square boards, as you can rotate them to find extra equivalent boards
-		 if(lines == columns){
-			 MAX_SYMMETRY_DEPTH = 8;
-		 } else {
-			 MAX_SYMMETRY_DEPTH = 4;
-		 }
+		 moves = new int[shape.cells];
+		 finishedAt = 0;
 	 }
  
  
@@ -108,6 +125,7 @@ public class TicTacToeGame {
 		 lines = base.lines;
 		 columns = base.columns;
 		 sizeWin = base.sizeWin;
+		 shape = base.shape;
  
 		 //If the next attribute doesn't correspond to an index within the scope of the board
 		 if(next < 0 || next >= lines*columns){
@@ -115,21 +133,28 @@ public class TicTacToeGame {
 		 }
  
 		 //If the suggested next position is already occupied by an X or O
-		 if(base.board[next] != CellValue.EMPTY) {
+		 if(base.isSet(0, next) || base.isSet(1, next)) {
 			 throw new IllegalArgumentException("CellValue not empty: " + next + " in game " + base);
 		 }
  
 		 //Creating a new board that is a deep copy of the old board
-		 board = new CellValue[lines*columns];
-		 for(int i = 0; i < lines*columns ; i ++) {
-			 board[i] = base.board[i];
+		 xBits = base.xBits;
+		 oBits = base.oBits;
+		 if(base.xBoard != null){
+			 xBoard = base.xBoard.clone();
+			 oBoard = base.oBoard.clone();
 		 }
  
 		 //Incrementing level
 		 level = base.level+1;
  
-		 //Performing next move
-		 board[next] = base.nextCellValue();
+		 //Performing next move. The Zobrist hashes are only computed if they are asked for
+		 setBit(base.level%2, next);
+		 rank = base.rank;
+		 updateRank(base.level%2, next, 1);
+		 moves = base.moves.clone();
+		 moves[base.level] = next;
+		 finishedAt = base.finishedAt;
  
 		 //This updates the GameState if the game is still ongoing. If a player continues to put down X's or O's after
 		 //the game is over we allow them to continue but we keep the same GameState value
@@ -139,19 +164,81 @@ public class TicTacToeGame {
 		 else{
 		 	gameState = base.gameState;
 		 }
+	 }
  
-		 //Creates new integer array of required size.
-		 this.transformedBoard = new int[base.lines * base.columns];
  
-		 //Copies over maximum symmetry depth from other instance of TicTacToeGame.
-		 this.MAX_SYMMETRY_DEPTH = base.MAX_SYMMETRY_DEPTH;
+
+	/**
+	 * constructor creating the game whose board is encoded
+	 * by key, as if its cells had been played one by one.
+	 * Used by StateGraph to rebuild its states.
+	 * @param shape
+	 *  the shape of the board encoded by key
+	 * @param key
+	 *  the encoding of the board
+	 */
+	 TicTacToeGame(BoardShape shape, StateKey key){
+		 this(shape);
+		 //X cells are recorded at even levels and O cells at odd levels, so that undo() stays valid
+		 int xCount = 0;
+		 int oCount = 0;
+		 for(int i = 0; i < shape.cells; i++){
+			 CellValue value = key.valueAt(i);
+			 if(value == CellValue.X){
+				 setBit(0, i);
+				 updateRank(0, i, 1);
+				 moves[2*(xCount++)] = i;
+				 level++;
+			 } else if(value == CellValue.O){
+				 setBit(1, i);
+				 updateRank(1, i, 1);
+				 moves[2*(oCount++) + 1] = i;
+				 level++;
+			 }
+		 }
  
-		 //Sets symmetryDepth and transformedBoard to default values.
-		 this.reset();
+		 //Every occupied cell is checked, stopping at the first winning line
+		 int winningCell = -1;
+		 for(int i = 0; i < shape.cells; i++){
+			 if(valueAt(i) != CellValue.EMPTY){
+				 setGameState(i);
+				 if(gameState == GameState.XWIN || gameState == GameState.OWIN){
+					 winningCell = i;
+					 break;
+				 }
+			 }
+		 }
+
+		 //A won game is recorded as if the winner had just played a cell lying on every winning line, so that
+		 //undoing that move gives back a game still PLAYING, as on a game built by play
+		 if(winningCell != -1 && (level - 1)%2 == ((gameState == GameState.XWIN) ? 0 : 1)){
+			 int player = (gameState == GameState.XWIN) ? 0 : 1;
+			 int last = -1;
+			 for(int k = level - 1; k >= 0 && last == -1; k -= 2){
+				 clearBit(player, moves[k]);
+				 if(!hasLine(player)){
+					 last = k;
+				 }
+				 setBit(player, moves[k]);
+			 }
+			 if(last != -1){
+				 int cell = moves[last];
+				 moves[last] = moves[level - 1];
+				 moves[level - 1] = cell;
+			 }
+		 }
 	 }
- 
- 
 
+	 //Helper method that checks whether the cells of a player (0 for X, 1 for O) hold a complete line
+	 private boolean hasLine(int player){
+		 for(int i = 0; i < shape.cells; i++){
+			 if(isSet(player, i) && completesLine(player, i)){
+				 return true;
+			 }
+		 }
+		 return false;
+	 }
+ 
 	 //A comparator for the TicTacToeGame object
 	 public boolean equals(Object o) {
 		
@@ -175,12 +262,243 @@ public class TicTacToeGame {
 			 (sizeWin != other.sizeWin)){
 			 return false;
 		 }
-		 for(int i = 0; i < board.length ; i++ ) {
-			 if(board[i]!= other.board[i]) {
-				 return false;
+		 return xBits == other.xBits && oBits == other.oBits && Arrays.equals(xBoard, other.xBoard) && Arrays.equals(oBoard, other.oBoard);
+	 }
+ 
+	 //Equal games have the same symmetric Zobrist hash, so using it keeps hashCode consistent with both
+	 //equals and equalsWithSymmetry, without computing the canonical key
+	 public int hashCode(){
+		 long hash = symmetricZobristHash();
+		 return (int)(hash ^ (hash >>> 32));
+	 }
+ 
+	/**
+	 * returns the Zobrist hash of the board: the xor of a random
+	 * key per occupied cell. It is updated in constant time by
+	 * play and undo.
+	 * @return
+	 *  the 64 bit hash of the board
+	 */
+	 public long zobristHash(){
+		 return zobrist()[0];
+	 }
+ 
+	/**
+	 * returns the Zobrist hash of the board once symmetry s is
+	 * applied to it.
+	 * @param s
+	 *  the index of the symmetry in the shape of this game
+	 * @return
+	 *  the 64 bit hash of the transformed board
+	 */
+	 public long zobristHash(int s){
+		 return zobrist()[s];
+	 }
+ 
+	/**
+	 * returns a hash of the board that does not depend on its
+	 * orientation: the smallest Zobrist hash over all the
+	 * symmetries. Games that are equal up to symmetry have the
+	 * same symmetric hash, which makes it a cheap key for
+	 * transposition tables and caches.
+	 * @return
+	 *  the 64 bit symmetric hash of the board
+	 */
+	 public long symmetricZobristHash(){
+		 long[] hashes = zobrist();
+		 long hash = hashes[0];
+		 for(int s = 1; s < hashes.length; s++){
+			 hash = Math.min(hash, hashes[s]);
+		 }
+		 return hash;
+	 }
+
+	 //Helper method returning the Zobrist hash of every symmetry, computing them from the board on first use
+	 private long[] zobrist(){
+		 long[] result = zobrist;
+		 if(result == null){
+			 result = new long[shape.symmetryCount()];
+			 for(int i = 0; i < shape.cells; i++){
+				 int player = isSet(0, i) ? 0 : isSet(1, i) ? 1 : -1;
+				 for(int s = 0; player != -1 && s < result.length; s++){
+					 result[s] ^= shape.zobristKey(s, player, i);
+				 }
+			 }
+			 zobrist = result;
+		 }
+		 return result;
+	 }
+ 
+	/**
+	 * returns the canonical key of this game: the smallest
+	 * encoding of the board over all its symmetries. Two games
+	 * of the same shape have the same canonical key iff
+	 * equalsWithSymmetry would return true.
+	 * @return
+	 *  the canonical key, computed once and cached until the next move
+	 */
+	 public StateKey canonicalKey(){
+		 return canonical().key;
+	 }
+ 
+	/**
+	 * returns the symmetry that turns this board into its
+	 * canonical form: the cell at index i of the canonical
+	 * board is the cell at index shape.symmetricCell(s, i)
+	 * of this board.
+	 * @return
+	 *  the index of the symmetry in the shape of this game
+	 */
+	 public int canonicalSymmetry(){
+		 return canonical().symmetry;
+	 }
+ 
+	/**
+	 * returns the symmetry that maps the game passed as
+	 * parameter onto this one: with u the returned value,
+	 * the cell at index i of other holds the same value as
+	 * the cell at index shape.symmetricCell(u, i) of this game.
+	 * @param other
+	 *  the TicTacToeGame instance to be compared with this one
+	 * @return
+	 *  the index of the symmetry, or -1 if the two games are
+	 *  not equal up to symmetry
+	 */
+	 public int symmetryTo(TicTacToeGame other){
+		 if(other == null || shape != other.shape || level != other.level ||
+			 !canonicalKey().equals(other.canonicalKey())){
+			 return -1;
+		 }
+		 return shape.compose(canonicalSymmetry(), shape.inverse(other.canonicalSymmetry()));
+	 }
+ 
+	 //Helper method returning the cached canonical form, computing it on first use. Two threads
+	 //reading the same game may both compute it, but they store identical values
+	 private Canonical canonical(){
+		 Canonical result = canonical;
+		 if(result == null){
+			 result = computeCanonical();
+			 canonical = result;
+		 }
+		 return result;
+	 }
+ 
+	 //Helper method that encodes the board under every symmetry and keeps the smallest encoding
+	 private Canonical computeCanonical(){
+		 if(xBoard == null){
+			 return computeSmallCanonical();
+		 }
+		 int words = shape.words;
+		 long[] best = new long[2*words];
+		 long[] candidate = new long[2*words];
+		 int bestSymmetry = 0;
+		 for(int s = 0; s < shape.symmetryCount(); s++){
+			 encode(s, candidate);
+			 if(s == 0 || StateKey.compare(candidate, best) < 0){
+				 long[] tmp = best;
+				 best = candidate;
+				 candidate = tmp;
+				 bestSymmetry = s;
+			 }
+		 }
+		 return new Canonical(new StateKey(best), bestSymmetry);
+	 }
+ 
+	 //Same as above for a board kept in xBits and oBits, comparing the encodings as longs instead of arrays
+	 private Canonical computeSmallCanonical(){
+		 long bestX = 0;
+		 long bestO = 0;
+		 int bestSymmetry = 0;
+		 for(int s = 0; s < shape.symmetryCount(); s++){
+			 long x = 0;
+			 long o = 0;
+			 for(int i = 0; i < shape.cells; i++){
+				 int cell = shape.symmetricCell(s, i);
+				 x |= ((xBits >>> cell) & 1L) << i;
+				 o |= ((oBits >>> cell) & 1L) << i;
+			 }
+			 int order = (x != bestX) ? Long.compareUnsigned(x, bestX) : Long.compareUnsigned(o, bestO);
+			 if(s == 0 || order < 0){
+				 bestX = x;
+				 bestO = o;
+				 bestSymmetry = s;
+			 }
+		 }
+		 return new Canonical(new StateKey(bestX, bestO), bestSymmetry);
+	 }
+ 
+	 //Helper method that writes the encoding of the board under symmetry s (X words then O words) into encoding
+	 private void encode(int s, long[] encoding){
+		 int words = shape.words;
+		 Arrays.fill(encoding, 0L);
+		 for(int i = 0; i < shape.cells; i++){
+			 int cell = shape.symmetricCell(s, i);
+			 if(isSet(0, cell)){
+				 encoding[i >>> 6] |= 1L << (i & 63);
+			 } else if(isSet(1, cell)){
+				 encoding[words + (i >>> 6)] |= 1L << (i & 63);
+			 }
+		 }
+	 }
+ 
+	/**
+	 * returns the rank of the board: a dense index between 0
+	 * and 3^(lines*columns) - 1, unique to each board (see
+	 * BoardShape.rankWeight). It is kept up to date by play
+	 * and undo, so this method runs in constant time.
+	 * Requires that getShape().isRanked() == true
+	 * @return
+	 *  the rank of the board
+	 */
+	 public int rank(){
+		 if(!shape.isRanked()){
+			 throw new IllegalStateException("Positions of a " + lines + "x" + columns + " board cannot be ranked");
+		 }
+		 return rank;
+	 }
+ 
+	/**
+	 * creates the game whose board has the given rank, the
+	 * inverse of rank(). Its cells are taken as played one by
+	 * one, X first.
+	 * @param rank
+	 *  a rank as returned by rank() for a game of that shape
+	 * @return
+	 *  the game with that rank
+	 */
+	 public static TicTacToeGame unrank(int lines, int columns, int sizeWin, int rank){
+		 BoardShape shape = BoardShape.of(lines, columns, sizeWin);
+		 if(rank < 0 || rank >= shape.rankCount()){
+			 throw new IllegalArgumentException("Illegal rank: " + rank);
+		 }
+		 long[] encoding = new long[2*shape.words];
+		 int xCount = 0;
+		 int oCount = 0;
+		 for(int i = 0; i < shape.cells; i++){
+			 int digit = rank%3;
+			 rank /= 3;
+			 if(digit != 0){
+				 encoding[(digit-1)*shape.words + (i >>> 6)] |= 1L << (i & 63);
+				 if(digit == 1){
+					 xCount++;
+				 } else {
+					 oCount++;
+				 }
 			 }
 		 }
-		 return true;
+		 if(xCount != oCount && xCount != oCount+1){
+			 throw new IllegalArgumentException("Rank does not match a position: " + xCount + " X and " + oCount + " O");
+		 }
+		 return new TicTacToeGame(shape, new StateKey(encoding));
+	 }
+ 
+	/**
+	 * getter for the variable shape
+	 * @return
+	 * 	the tables shared by all games of this shape
+	 */
+	 public BoardShape getShape(){
+		 return shape;
 	 }
  
 	/**
@@ -232,7 +550,13 @@ public class TicTacToeGame {
 			 throw new IllegalArgumentException("Illegal position: " + i);
 		 }
  
-		 return board[i];
+		 if(isSet(0, i)) {
+			 return CellValue.X;
+		 }
+		 if(isSet(1, i)) {
+			 return CellValue.O;
+		 }
+		 return CellValue.EMPTY;
 	 }
  
 	/**
@@ -257,17 +581,51 @@ public class TicTacToeGame {
 		 if(i < 0 || i >= lines*columns){
 			 throw new IllegalArgumentException("Illegal position: " + i);
 		 }
-		 if(board[i] != CellValue.EMPTY) {
+		 if(isSet(0, i) || isSet(1, i)) {
 			 throw new IllegalArgumentException("CellValue not empty: " + i + " in game " + toString());
 		 }
  
-		 board[i] = nextCellValue();
+		 setBit(level%2, i);
+		 updateZobrist(level%2, i);
+		 updateRank(level%2, i, 1);
+		 moves[level] = i;
 		 level++;
+		 canonical = null;
 		 if(gameState == GameState.PLAYING) {
 			 setGameState(i);
 		 }
 	 }
  
+	/**
+	 * Takes back the last move played, restoring the board,
+	 * the level and the state of the game exactly as they
+	 * were before that move. Together with play, this allows
+	 * a search to explore the children of a game on a single
+	 * instance, without creating any object.
+	 * If no move has been played, an IllegalStateException
+	 * is thrown.
+		* @return
+	 *  the index of the cell that has been emptied
+	   */
+	 public int undo() {
+ 
+		 if(level == 0){
+			 throw new IllegalStateException("No move to undo in game " + toString());
+		 }
+ 
+		 level--;
+		 int i = moves[level];
+		 clearBit(level%2, i);
+		 updateZobrist(level%2, i);
+		 updateRank(level%2, i, -1);
+		 canonical = null;
+		 if(level < finishedAt) {
+			 gameState = GameState.PLAYING;
+			 finishedAt = 0;
+		 }
+		 return i;
+	 }
+ 
  
 	/**
 	 * A helper method which updates the gameState variable
@@ -287,66 +645,83 @@ public class TicTacToeGame {
  
 	 private void setGameState(int index){
  
-		 int left = Math.min(sizeWin-1,index%columns);
-		 int right= Math.min(sizeWin-1,columns - (index%columns +1));
-		 if( (countConsecutive(index-1, left,-1,board[index]) +
-				 countConsecutive(index+1, right,1,board[index]))
-			 >= sizeWin-1 ) {
-			 setGameState(board[index]);
+		 //Only the bitboard of the player who just played can contain a new winning line
+		 CellValue value = valueAt(index);
+ 
+		 if(completesLine((value == CellValue.X) ? 0 : 1, index)) {
+			 setGameState(value);
+			 finishedAt = level;
 			 return;
 		 }
  
+		 if (level == lines*columns) {
+			 gameState = GameState.DRAW;
+			 finishedAt = level;
+		 } else {
+			 gameState = GameState.PLAYING;
+		 }
  
+	 }
  
-		 int up 	= Math.min(sizeWin-1,index/columns);
-		 int down= Math.min(sizeWin-1, lines - (index/columns +1));
-		 if( (countConsecutive(index-columns, up,-columns,board[index]) +
-				 countConsecutive(index+columns, down,columns,board[index]))
-			 >= sizeWin-1 ) {
-			 setGameState(board[index]);
-			 return;
-		 }
  
-		 int upLeft = Math.min(up, left);
-		 int downRight= Math.min(down, right);
-		 if( (countConsecutive(index-(columns+1), upLeft,-(columns+1),board[index]) +
-				 countConsecutive(index+(columns+1), downRight,columns+1,board[index]))
-			 >= sizeWin-1 ) {
-			 setGameState(board[index]);
-			 return;
+	 //Helper method that checks whether cell i is held by a player (0 for X, 1 for O)
+	 private boolean isSet(int player, int i){
+		 if(xBoard == null){
+			 return ((((player == 0) ? xBits : oBits) >>> i) & 1L) != 0;
 		 }
+		 return ((player == 0 ? xBoard : oBoard)[i >>> 6] & (1L << (i & 63))) != 0;
+	 }
  
-		 int upRight= Math.min(up, right);
-		 int downLeft = Math.min(down, left);
-		 if( (countConsecutive(index-(columns-1), upRight,-(columns-1),board[index]) +
-				 countConsecutive(index+(columns-1), downLeft,columns-1,board[index]))
-			 >= sizeWin-1 ) {
-			 setGameState(board[index]);
-			 return;
+	 //Helper method that gives cell i to a player
+	 private void setBit(int player, int i){
+		 if(xBoard == null){
+			 if(player == 0){
+				 xBits |= 1L << i;
+			 } else {
+				 oBits |= 1L << i;
+			 }
+		 } else {
+			 (player == 0 ? xBoard : oBoard)[i >>> 6] |= 1L << (i & 63);
 		 }
+	 }
  
- 
-		 if (level == lines*columns) {
-			 gameState = GameState.DRAW;
+	 //Helper method that takes cell i back from a player
+	 private void clearBit(int player, int i){
+		 if(xBoard == null){
+			 if(player == 0){
+				 xBits &= ~(1L << i);
+			 } else {
+				 oBits &= ~(1L << i);
+			 }
 		 } else {
-			 gameState = GameState.PLAYING;
+			 (player == 0 ? xBoard : oBoard)[i >>> 6] &= ~(1L << (i & 63));
 		 }
- 
 	 }
  
+	 //Helper method that checks whether the cells of a player hold a complete line through cell i
+	 private boolean completesLine(int player, int i){
+		 if(xBoard == null){
+			 return shape.completesLine(i, (player == 0) ? xBits : oBits);
+		 }
+		 return shape.completesLine(i, (player == 0) ? xBoard : oBoard);
+	 }
  
-	 //Helper method that counts the consecutive X's and O's on the board to determine if a player has won
-	 private int countConsecutive(int startingPosition, int numberOfSteps,
-		 int stepGap, CellValue value){
- 
-		 int result= 0;
-		 for(int i = 0; i < numberOfSteps;i++){
-			 if(board[startingPosition + i*stepGap] != value)
-				 break;
-			 result++;
+	 //Helper method that toggles the key of a player (0 for X, 1 for O) on cell i in the hash of every symmetry,
+	 //if the hashes have been computed
+	 private void updateZobrist(int player, int i){
+		 if(zobrist == null){
+			 return;
 		 }
-		 return result;
+		 for(int s = 0; s < zobrist.length; s++){
+			 zobrist[s] ^= shape.zobristKey(s, player, i);
+		 }
+	 }
  
+	 //Helper method that adds (sign 1) or removes (sign -1) the digit of a player (0 for X, 1 for O) on cell i
+	 private void updateRank(int player, int i, int sign){
+		 if(shape.isRanked()){
+			 rank += sign*(player+1)*shape.rankWeight(i);
+		 }
 	 }
  
 	 //Helper method to set the GameState value
@@ -380,7 +755,7 @@ public class TicTacToeGame {
 				 res+= Utils.NEW_LINE;
 			 }
 			 for(int j = 0; j < columns ; j++){
-				 switch(board[i*columns + j]){
+				 switch(valueAt(i*columns + j)){
 					 case X:
 						 res+= " X ";
 						 break;
@@ -402,105 +777,6 @@ public class TicTacToeGame {
 	 }
  
  
-	 //Resets the symmetry values and clears the transformedBoard
-	 public void reset(){
-			 //Sets the symmetry depth to default.
-			 symmetryDepth = 0;
-			 //sets the transformedBoard array back to default values.
-			 for(int i = 0; i < transformedBoard.length; i++){
-				 transformedBoard[i] = i;
-			 }
- 
-	 }
- 
-	 /**
-	  * checks if there are more symmetries to go through
-	  *
-	  * @return
-	  *   true iff there are additional symmetries
-	  */
-	 public boolean hasNext(){
-			 //checks to see if maximum symmetry depth has been hit.
-			 return symmetryDepth < MAX_SYMMETRY_DEPTH;
-	 }
- 
-	 /**
-	  * Computes the next symmetries and stores it in
-	  * the array "transform".
-	  * Requires that this.hasNext() == true
-	  */
-	 public void next(){
-			 //2 cases depending on game board shape.
-			 //This one will apply required symmetry operations on an nxm board.
-			 if(MAX_SYMMETRY_DEPTH == 4){
-				 switch(symmetryDepth){
- 
-					 case 0: //ID
-									 symmetryDepth++;
-									 break;
-					 case 1: //Horizontal Symmetry
-									 Utils.horizontalFlip(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 2: //Vertical Symmetry
-									 Utils.verticalFlip(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 3: //Horizontal Symmetry
-									 Utils.horizontalFlip(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 4: //Error
-									 throw new IllegalStateException();
-					 default: //Error
-									 throw new IllegalStateException();
-				 }
-				 //And this one will apply required symmetry operations on an nxn board.
-			 } else if(MAX_SYMMETRY_DEPTH == 8){
-				 switch(symmetryDepth){
- 
-					 case 0: //ID
-									 symmetryDepth++;
-									 break;
-					 case 1: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 2: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 3: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 4: //Horizontal Symmetry
-									 Utils.horizontalFlip(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 5: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 6: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 7: //Rotate
-									 Utils.rotate(this.lines, this.columns, this.transformedBoard);
-									 symmetryDepth++;
-									 break;
-					 case 8: //Error
-									 throw new IllegalStateException();
-					 default: //Error
-									 throw new IllegalStateException();
-				 }
-			 }
- 
-	 }
- 
- 
- 
    /**
 	 * Compares this instance of the game with the
 	 * instance passed as parameter. Return true
@@ -517,40 +793,27 @@ public class TicTacToeGame {
 			 } else if((this.lines != other.lines) ||
 			   (this.columns != other.columns) ||
 				  (this.level != other.level) ||
-				  (this.sizeWin != other.sizeWin) ||
-				 (this.MAX_SYMMETRY_DEPTH != other.MAX_SYMMETRY_DEPTH)){
+				  (this.sizeWin != other.sizeWin)){
 				 return false;
 			 }
  
-			 //Resets transformedBoard back to default values.
-			 this.reset();
- 
-			 //Creates variables used in the comparison of 2 boards.
-			 int equalCellCount, index;
- 
 			 //Compares all of the symmetries of the current board against the
-			 //other board being compared.
-			 while(this.hasNext()){
-				 //Increments the symmetry depth by 1. Catches an error if one is
-				 //thrown.
-				 try{
-					 this.next();
-				 } catch(IllegalStateException e){
-					 return false;
-				 }
+			 //other board being compared, without modifying either of them.
+			 for(int s = 0; s < shape.symmetryCount(); s++){
 				 //Checks each cell to see if they match.
-				 equalCellCount = 0;
-				 for(index = 0; index < (this.lines * this.columns); index++){
-					 if(this.board[transformedBoard[index]] == other.board[index]){
-						 equalCellCount++;
+				 int index;
+				 for(index = 0; index < shape.cells; index++){
+					 int cell = shape.symmetricCell(s, index);
+					 if(this.isSet(0, cell) != other.isSet(0, index) ||
+						 this.isSet(1, cell) != other.isSet(1, index)){
+						 break;
 					 }
 				 }
 				 //Checks to see if all of the cells matched, if so then they match
 				 //with symmetry and true is returned.
-				 if(equalCellCount == this.lines * this.columns){
+				 if(index == shape.cells){
 					 return true;
 				 }
- 
 			 }
 			 //If the method makes it here, then the boards are not equals to each other
 			 //using symmetry.
@@ -558,15 +821,17 @@ public class TicTacToeGame {
 		 }
  
 	  /**
-	 * Returns a String representation of the game as currently trasnsformed
+	 * Returns a String representation of the game as transformed by a symmetry
 	 *
+		* @param symmetry
+	 *  the index of the symmetry in the shape of this game
 		* @return
 	 *  String representation of the game
 	   */
  
-	 public String toStringTransformed(){
-		 if(transformedBoard == null) {
-			 throw new NullPointerException("transformedBoard not initialized");
+	 public String toStringTransformed(int symmetry){
+		 if(symmetry < 0 || symmetry >= shape.symmetryCount()) {
+			 throw new IllegalArgumentException("Illegal symmetry: " + symmetry);
 		 }
  
 		 String res = "";
@@ -578,7 +843,7 @@ public class TicTacToeGame {
 				 res+= Utils.NEW_LINE;
 			 }
 			 for(int j = 0; j < columns ; j++){
-				 switch(board[transformedBoard[i*columns + j]]){
+				 switch(valueAt(shape.symmetricCell(symmetry, i*columns + j))){
 					 case X:
 						 res+= " X ";
 						 break;
@@ -598,4 +863,58 @@ public class TicTacToeGame {
 		 return res ;
  
 	 }
+ 
+	 //This is a simple method to test the Zobrist hashes over every position reachable on a board, by walking
+	 //the whole game tree with play and undo, and print the collision rates into the console
+	 private static void testZobrist(int lines, int columns, int sizeWin){
+		 java.util.HashMap<Long, String> boards = new java.util.HashMap<Long, String>();
+		 java.util.HashMap<Long, StateKey> classes = new java.util.HashMap<Long, StateKey>();
+		 java.util.HashSet<String> positions = new java.util.HashSet<String>();
+		 java.util.HashSet<StateKey> canonicalPositions = new java.util.HashSet<StateKey>();
+		 int[] collisions = new int[2];
+		 testZobrist(new TicTacToeGame(lines, columns, sizeWin), boards, classes, positions, canonicalPositions, collisions);
+		 System.out.println("testing " + lines + " lines, " + columns + " columns and " + sizeWin + " to win.");
+		 System.out.println(positions.size() + " positions, " + boards.size() + " distinct hashes, "
+			 + collisions[0] + " collisions (rate " + ((double)collisions[0]/positions.size()) + ")");
+		 System.out.println(canonicalPositions.size() + " positions up to symmetry, " + classes.size() + " distinct symmetric hashes, "
+			 + collisions[1] + " collisions (rate " + ((double)collisions[1]/canonicalPositions.size()) + ")");
+	 }
+ 
+	 //Helper method of testZobrist visiting game and all the games that can follow it
+	 private static void testZobrist(TicTacToeGame game, java.util.HashMap<Long, String> boards,
+		 java.util.HashMap<Long, StateKey> classes, java.util.HashSet<String> positions,
+		 java.util.HashSet<StateKey> canonicalPositions, int[] collisions){
+ 
+		 String board = game.toString();
+		 if(!positions.add(board)){
+			 return;
+		 }
+		 String other = boards.put(game.zobristHash(), board);
+		 if(other != null && !other.equals(board)){
+			 collisions[0]++;
+		 }
+		 if(canonicalPositions.add(game.canonicalKey())){
+			 StateKey otherKey = classes.put(game.symmetricZobristHash(), game.canonicalKey());
+			 if(otherKey != null){
+				 collisions[1]++;
+			 }
+		 }
+		 if(game.getGameState() != GameState.PLAYING){
+			 return;
+		 }
+		 for(int i = 0; i < game.shape.cells; i++){
+			 if(game.valueAt(i) == CellValue.EMPTY){
+				 game.play(i);
+				 testZobrist(game, boards, classes, positions, canonicalPositions, collisions);
+				 game.undo();
+			 }
+		 }
+	 }
+ 
+	 public static void main(String[] args){
+ 
+		 testZobrist(3,3,3);
+		 testZobrist(3,4,3);
+ 
+	 }
  }
\ No newline at end of file
@@ -0,0 +1,353 @@
+//BeadStore holds the beads of every matchbox of a MENACE brain in a single array, so that a whole brain can be copied at once.
+//Beads can be added from several threads at the same time: draws may then see a matchbox in the middle of an update, but no update is lost.
+//The counts can also live in a memory-mapped file, shared by every process that maps it
+package src.Players;
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.SplittableRandom;
+import java.util.function.Consumer;
+import src.common.*;
+import src.Gameboards.BoardShape;
+import src.Gameboards.StateGraph;
+import src.Gameboards.StateKey;
+
+public final class BeadStore {
+
+	//graph gives the ids of the matchboxes, one per state
+	private final StateGraph graph;
+
+	//Number of cells of a board, which is also the number of counts per matchbox
+	private final int cells;
+
+	//Storage of the counts: ints, or saturating shorts or bytes to fit more matchboxes in memory
+	public enum CounterSize {
+		BYTE(Byte.MIN_VALUE, Byte.MAX_VALUE),
+		SHORT(Short.MIN_VALUE, Short.MAX_VALUE),
+		INT(Integer.MIN_VALUE, Integer.MAX_VALUE);
+
+		public final int min;
+		public final int max;
+
+		CounterSize(int min, int max){
+			this.min = min;
+			this.max = max;
+		}
+	}
+
+	private final CounterSize counterSize;
+
+	//beads.get(id*cells + cell) is the number of beads for the cell of the matchbox of the state with that id,
+	//the cells being those of the canonical form of the state
+	private final Counters beads;
+
+	//The whole mapped file, header included, null unless the store was built by map
+	private final MappedByteBuffer mapping;
+
+	//First bytes of a saved brain ("MNCE"), and version of the format
+	public static final int FILE_MAGIC = 0x4D4E4345;
+	public static final int FILE_VERSION = 1;
+
+	//First bytes of a mapped brain ("MNCM"), and size of its header: the magic, FILE_VERSION, the lines,
+	//columns and sizeWin of the board, the number of states, whether the matchboxes were filled, and a spare int
+	public static final int MAPPED_MAGIC = 0x4D4E434D;
+	private static final int MAPPED_HEADER_BYTES = 8*Integer.BYTES;
+	private static final int MAPPED_FILLED_OFFSET = 6*Integer.BYTES;
+
+	//Builds a store with an empty matchbox for every state of the graph
+	public BeadStore(StateGraph graph){
+		this(graph, CounterSize.INT);
+	}
+
+	/**
+	 * builds a store with an empty matchbox for every state of the
+	 * graph, keeping counts of the given size. Counts of every size
+	 * saturate at their minimum; a matchbox that would go over the
+	 * maximum is first halved, each positive count being rounded up
+	 * so that no move that had beads loses them all. The total of a
+	 * matchbox is counted in a long, so it never wraps around.
+	 */
+	public BeadStore(StateGraph graph, CounterSize counterSize){
+		this.graph = graph;
+		this.counterSize = counterSize;
+		cells = graph.shape.cells;
+		beads = Counters.of(counterSize, graph.size()*cells);
+		mapping = null;
+	}
+
+	//Builds a store over the counts of a mapped file, which are little-endian ints after the header
+	private BeadStore(StateGraph graph, MappedByteBuffer mapping){
+		this.graph = graph;
+		counterSize = CounterSize.INT;
+		cells = graph.shape.cells;
+		beads = Counters.of(mapping.slice(MAPPED_HEADER_BYTES, mapping.capacity() - MAPPED_HEADER_BYTES));
+		this.mapping = mapping;
+	}
+
+	/**
+	 * maps a brain file, creating it if it does not exist. Every
+	 * process mapping the same file shares the same counts, updated
+	 * atomically, and the counts are kept by the file without any
+	 * save. A new file is filled by the initializer passed as
+	 * parameter while the file is locked, so that only the first
+	 * process to map it fills it. The counts of a mapped brain are
+	 * always ints, and its counter size is CounterSize.INT.
+	 * @throws IOException
+	 *  if the file cannot be mapped, or holds a brain for another graph
+	 */
+	public static BeadStore map(StateGraph graph, Path file, Consumer<BeadStore> initializer) throws IOException {
+		BoardShape shape = graph.shape;
+		long size = MAPPED_HEADER_BYTES + (long)graph.size()*shape.cells*Integer.BYTES;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.CREATE)){
+			FileLock lock = channel.lock();
+			try{
+				if(channel.size() == 0){
+					ByteBuffer header = ByteBuffer.allocate(MAPPED_HEADER_BYTES);
+					header.putInt(MAPPED_MAGIC).putInt(FILE_VERSION).putInt(shape.lines).putInt(shape.columns).putInt(shape.sizeWin).putInt(graph.size()).putInt(0).putInt(0);
+					header.flip();
+					while(header.hasRemaining()){
+						channel.write(header, header.position());
+					}
+				} else if(channel.size() != size && channel.size() != MAPPED_HEADER_BYTES){
+					throw new IOException(file + " has " + channel.size() + " bytes, expected " + size);
+				}
+
+				MappedByteBuffer mapping = channel.map(FileChannel.MapMode.READ_WRITE, 0, size);
+				int magic = mapping.getInt(0);
+				int version = mapping.getInt(Integer.BYTES);
+				if(magic != MAPPED_MAGIC || version != FILE_VERSION){
+					throw new IOException(file + " is not a mapped brain of version " + FILE_VERSION);
+				}
+				if(mapping.getInt(2*Integer.BYTES) != shape.lines || mapping.getInt(3*Integer.BYTES) != shape.columns ||
+					mapping.getInt(4*Integer.BYTES) != shape.sizeWin || mapping.getInt(5*Integer.BYTES) != graph.size()){
+					throw new IOException(file + " holds a brain for another board");
+				}
+
+				BeadStore store = new BeadStore(graph, mapping);
+				if(mapping.getInt(MAPPED_FILLED_OFFSET) == 0){
+					initializer.accept(store);
+					mapping.force();
+					mapping.putInt(MAPPED_FILLED_OFFSET, 1);
+					mapping.force();
+				}
+				return store;
+			} finally{
+				lock.release();
+			}
+		}
+	}
+
+	//Writes the counts of a mapped store back to its file, which the system otherwise does on its own time
+	public void force(){
+		if(mapping != null){
+			mapping.force();
+		}
+	}
+
+	//Builds a copy of the store passed as parameter
+	public BeadStore(BeadStore other){
+		this(other.graph, other.counterSize);
+		copyFrom(other);
+	}
+
+	//Overwrites every count of this store with the counts of another store built on the same graph
+	public void copyFrom(BeadStore other){
+		if(other.graph != graph || other.counterSize != counterSize){
+			throw new IllegalArgumentException("Bead stores of different graphs or counter sizes");
+		}
+		beads.copyFrom(other.beads);
+	}
+
+	public StateGraph getGraph(){
+		return graph;
+	}
+
+	public CounterSize getCounterSize(){
+		return counterSize;
+	}
+
+	public int getBeadCount(int id, int cell){
+		return count(id*cells + cell);
+	}
+
+	//Sets the count of a cell, clamped to the range of the counters
+	public void setBeadCount(int id, int cell, int count){
+		beads.set(id*cells + cell, Math.max(beads.min(), Math.min(beads.max(), count)));
+	}
+
+	//Atomically adds delta beads (removes them if delta is negative) to the cell of the matchbox of a state
+	public void addBeads(int id, int cell, int delta){
+		int index = id*cells + cell;
+		while(true){
+			int previous = count(index);
+			long count = (long)previous + delta;
+			if(count > beads.max()){
+				halve(id);
+				continue;
+			}
+			count = Math.max(count, beads.min());
+			if(beads.compareAndSet(index, previous, count)){
+				return;
+			}
+		}
+	}
+
+	//Helper method halving every count of the matchbox of a state, positive counts being rounded up
+	private void halve(int id){
+		for(int cell = 0; cell < cells; cell++){
+			int index = id*cells + cell;
+			int previous;
+			int count;
+			do {
+				previous = count(index);
+				count = (previous > 0) ? (previous + 1) >> 1 : previous/2;
+			} while(!beads.compareAndSet(index, previous, count));
+		}
+	}
+
+	//Helper method reading a count
+	private int count(int index){
+		return (int)beads.get(index);
+	}
+
+	//Draws a bead from the matchbox of a state and returns the cell it stands for. A cell with
+	//a negative count holds no bead
+	public int pickMove(int id, SplittableRandom random){
+		int base = id*cells;
+		long totalBeads = 0;
+
+		for(int i = 0; i < cells; i++){
+			totalBeads += Math.max(count(base + i), 0);
+		}
+
+		//An empty matchbox plays its first empty cell
+		if(totalBeads <= 0){
+			return firstEmptyCell(id);
+		}
+
+		//A matchbox holding fewer beads than an int can count draws them as it always did, so that seeded games do not change
+		long nextMove = ((totalBeads <= Integer.MAX_VALUE) ? random.nextInt((int)totalBeads) : random.nextLong(totalBeads)) + 1;
+
+		//If beads were taken away since they were counted, the draw falls on the last cell holding some
+		int lastMove = -1;
+		for(int i = 0; i < cells; i++){
+			int count = count(base + i);
+			if(count > 0){
+				lastMove = i;
+				nextMove -= count;
+				if(nextMove <= 0){
+					return i;
+				}
+			}
+		}
+		return (lastMove != -1) ? lastMove : firstEmptyCell(id);
+	}
+
+	//Helper method returning the first empty cell of the canonical form of a state
+	private int firstEmptyCell(int id){
+		for(int i = 0; i < cells; i++){
+			if(graph.valueAt(id, i) == CellValue.EMPTY){
+				return i;
+			}
+		}
+		return cells-1;
+	}
+
+	/**
+	 * saves the beads of every matchbox to a file. The file holds
+	 * FILE_MAGIC, FILE_VERSION, the lines, columns and sizeWin of
+	 * the board and the number of matchboxes, then for each
+	 * matchbox the canonical key of its state followed by the
+	 * count of every empty cell of that state. Every number is
+	 * written big-endian, as an int except for the words of the
+	 * keys that are longs.
+	 */
+	public void save(Path file) throws IOException {
+		BoardShape shape = graph.shape;
+		try(DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))){
+			out.writeInt(FILE_MAGIC);
+			out.writeInt(FILE_VERSION);
+			out.writeInt(shape.lines);
+			out.writeInt(shape.columns);
+			out.writeInt(shape.sizeWin);
+			out.writeInt(graph.size());
+			for(int id = 0; id < graph.size(); id++){
+				StateKey key = graph.key(id);
+				for(int w = 0; w < key.length(); w++){
+					out.writeLong(key.word(w));
+				}
+				for(int i = 0; i < cells; i++){
+					if(key.valueAt(i) == CellValue.EMPTY){
+						out.writeInt(count(id*cells + i));
+					}
+				}
+			}
+		}
+	}
+
+	/**
+	 * loads beads saved by save(Path), reading the file through
+	 * a memory mapping. Matchboxes that are not in the file keep
+	 * their beads. The whole file is read into a copy of the store
+	 * first, so that the store is left untouched if it fails.
+	 * @throws IOException
+	 *  if the file cannot be read, is not a saved brain, or was
+	 *  saved for another board or a state this graph does not have
+	 */
+	public void load(Path file) throws IOException {
+		BeadStore loaded = new BeadStore(this);
+		loaded.read(file);
+		copyFrom(loaded);
+	}
+
+	//Helper method reading the beads of a file saved by save(Path) into this store
+	private void read(Path file) throws IOException {
+		BoardShape shape = graph.shape;
+		MappedByteBuffer in;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try{
+			if(in.getInt() != FILE_MAGIC){
+				throw new IOException(file + " is not a saved brain");
+			}
+			int version = in.getInt();
+			if(version != FILE_VERSION){
+				throw new IOException("Unsupported brain version " + version + " in " + file);
+			}
+			int lines = in.getInt();
+			int columns = in.getInt();
+			int sizeWin = in.getInt();
+			if(lines != shape.lines || columns != shape.columns || sizeWin != shape.sizeWin){
+				throw new IOException(file + " holds a brain for a " + lines + "x" + columns + " board, " + sizeWin + " to win");
+			}
+			int count = in.getInt();
+			long[] encoding = new long[2*shape.words];
+			for(int entry = 0; entry < count; entry++){
+				for(int w = 0; w < encoding.length; w++){
+					encoding[w] = in.getLong();
+				}
+				int id = graph.indexOf(StateKey.of(encoding));
+				if(id == -1){
+					throw new IOException("Unknown state " + StateKey.of(encoding) + " in " + file);
+				}
+				for(int i = 0; i < cells; i++){
+					if(graph.valueAt(id, i) == CellValue.EMPTY){
+						setBeadCount(id, i, in.getInt());
+					}
+				}
+			}
+		} catch(BufferUnderflowException e){
+			throw new IOException(file + " is truncated", e);
+		}
+	}
+
+}
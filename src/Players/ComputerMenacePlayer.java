@@ -1,62 +1,81 @@
 package src.Players;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Path;
 import src.common.*;
-import src.Gameboards.MenaceTicTacToeGame;
+import src.Gameboards.StateGraph;
 import src.Gameboards.TicTacToeGame;
 
 
 public class ComputerMenacePlayer extends Player {
 
 
-	//allGames represents a LinkedList of LinkedLists which represent all possible unique gamestates
-	//Each LinkedList in allGames corresponds to another layer of depth within the game. For example, in the 1st LinkedList
-	//there would be 1 or 0 cells placed depending on if it went first or second
-	private LinkedList<LinkedList<MenaceTicTacToeGame>> allGames;
+	//graph holds all possible unique gamestates, shared with every other player of the same board shape
+	private StateGraph graph;
 
-	private LinkedList<MenaceTicTacToeGame> gamesVisited;
-	private LinkedList<Integer> movesPlayed;
+	//beads holds the matchbox of every state, possibly shared with other players learning together
+	private BeadStore beads;
+
+	//lazyBeads holds the matchboxes of the states played so far on boards that are not enumerated,
+	//null when graph and beads are used
+	private LazyBeadStore lazyBeads;
+
+	//The states visited during the current game, and the (canonical) cell played in each of them
+	private Trajectory trajectory;
 
 	
 	public ComputerMenacePlayer(){
+		this(BeadStore.CounterSize.INT);
+	}
+
+	//Builds a player whose bead counts take the given size, see BeadStore
+	public ComputerMenacePlayer(BeadStore.CounterSize counterSize){
 		super();
 
-		//Initializing allGames, gamesVisited, and movesPlayed
-		allGames = new LinkedList<LinkedList<MenaceTicTacToeGame>>();
-		gamesVisited = new LinkedList<MenaceTicTacToeGame>();
-		movesPlayed = new LinkedList<Integer>();
-
-		//Creating the lists for the first iteration
-		allGames.add(new LinkedList<MenaceTicTacToeGame>());
-		allGames.get(0).add(new MenaceTicTacToeGame());
-
-		//Build all the other layers by adding the possible next moves to the previously built games
-		//For every move (Perfect Player or their opponent)
-		for(int i=1; i<= 9; i++) {
-			LinkedList<MenaceTicTacToeGame> newList; 	
-			newList = new LinkedList<MenaceTicTacToeGame>();	//Make a new list for the new layer
-			allGames.add(newList);								//Add that list to the allGames list
-			for(MenaceTicTacToeGame game: allGames.get(i-1)){	//For all games in the previous iteration
-				if(game.getGameState() == GameState.PLAYING) {	//If they are still in process
-					for(int j = 0; j < 9; j++) {				//Iterate through their cells
-						if(game.valueAt(j) == CellValue.EMPTY) {								//If a cell is empty
-							MenaceTicTacToeGame newGame = new MenaceTicTacToeGame(game,j);	//Create a new game with this as a base and that move played
-							
-							boolean isNew = true;										//Then, check if that game is already in the new layer
-							for(MenaceTicTacToeGame existingGame: allGames.get(i)){
-								if(newGame.equalsWithSymmetry(existingGame)){
-									isNew = false;
-									break;
-								}
-							}
-							if(isNew) {
-								newList.add(newGame);		//If it is not in the new layer, add it to the new layer
-							}					
-						}
-					}
-				}
+		//Initializing graph, beads, and trajectory
+		graph = StateGraph.of(3,3,3);
+		beads = new BeadStore(graph, counterSize);
+		trajectory = new Trajectory(graph.shape.cells);
 
-			}
+		//Filling every matchbox with its starting beads
+		fillMatchboxes(beads);
+	}
+
+	//Builds a player whose beads live in a mapped file, created and filled if it does not exist yet. Several
+	//processes can train the same brain file at the same time, and it keeps every game without being saved
+	public ComputerMenacePlayer(Path brainFile) throws IOException {
+		super();
+
+		graph = StateGraph.of(3,3,3);
+		beads = BeadStore.map(graph, brainFile, ComputerMenacePlayer::fillMatchboxes);
+		trajectory = new Trajectory(graph.shape.cells);
+	}
+
+	//Builds a player sharing the beads of another one: both learn into the same matchboxes, each from its own games,
+	//and they can play at the same time from different threads
+	public ComputerMenacePlayer(ComputerMenacePlayer brain){
+		super();
+
+		if(brain.lazyBeads != null){
+			throw new IllegalArgumentException("Matchboxes created on demand cannot be shared");
 		}
+		graph = brain.graph;
+		beads = brain.beads;
+		trajectory = new Trajectory(graph.shape.cells);
+	}
+
+
+	//Builds a player for any board, that only creates the matchbox of a state the first time it plays it, and
+	//throws away the least visited ones after a game when it holds more than maxMatchboxes of them
+	public ComputerMenacePlayer(int lines, int columns, int sizeWin, int maxMatchboxes){
+		this(lines, columns, sizeWin, maxMatchboxes, BeadStore.CounterSize.INT);
+	}
+
+	//Same as above, the bead counts taking the given size so that more matchboxes fit in memory, see BeadStore
+	public ComputerMenacePlayer(int lines, int columns, int sizeWin, int maxMatchboxes, BeadStore.CounterSize counterSize){
+		super();
+
+		lazyBeads = new LazyBeadStore(lines, columns, sizeWin, maxMatchboxes, counterSize);
+		trajectory = new Trajectory(lines*columns);
 	}
 
 
@@ -65,21 +84,107 @@ public class ComputerMenacePlayer extends Player {
 		if(game.getLevel() == game.lines*game.columns){
 			throw new IllegalArgumentException("Game is finished already!");
 		}
+
+		if(lazyBeads != null){
+			int slot = lazyBeads.slotOf(game);
+			int movePicked = lazyBeads.pickMove(slot, random);
+			int symmetry = game.canonicalSymmetry();
+			trajectory.add(slot, symmetry, movePicked);
+			game.play(lazyBeads.getShape().symmetricCell(symmetry, movePicked));
+			return;
+		}
 	
-		// This finds the game at the current level of depth that corresponds to the game provided, and plays the menace selected move which is determined randomly
-		for(MenaceTicTacToeGame menaceGame: allGames.get(game.getLevel())){
-			if(menaceGame.equalsWithSymmetry(game)){
-				int movePicked = menaceGame.pickMove();
-				gamesVisited.add(menaceGame);
-				movesPlayed.add(movePicked);
-				game.play(movePicked);
-				return;
+		// This finds the state that corresponds to the game provided, and plays the menace selected move which is determined randomly
+		int id = graph.indexOf(game);
+		if(id == -1){
+			//Should never reach here
+			throw new IllegalStateException("Game not found: " + game);
+		}
+
+		//The move is picked on the canonical form of the state, then mapped back onto the game provided
+		int movePicked = beads.pickMove(id, random);
+		int symmetry = graph.symmetryOf(game);
+		trajectory.add(id, symmetry, movePicked);
+		game.play(graph.shape.symmetricCell(symmetry, movePicked));
+
+	}
+
+	//Returns a copy of the beads of every matchbox, which later games do not change
+	public BeadStore snapshot(){
+		checkEnumerated();
+		return new BeadStore(beads);
+	}
+
+	//Fills every matchbox of a store with beads for each empty cell, fewer beads the deeper the state is in the game
+	private static void fillMatchboxes(BeadStore beads){
+
+		StateGraph graph = beads.getGraph();
+		for(int id = 0; id < graph.size(); id++){
+
+			int beadStart = initialBeads(graph.getLevel(id));
+
+			for(int i = 0; i < graph.shape.cells; i++){
+				
+				if(graph.valueAt(id, i) == CellValue.EMPTY){
+					beads.setBeadCount(id, i, beadStart);
+				}
+				else{
+					beads.setBeadCount(id, i, 0);
+				}
 			}
 		}
+	}
 
-		//Should never reach here
-		throw new IllegalStateException("Game not found: " + game);
+	//Number of beads given to each empty cell of a new matchbox, fewer the deeper the state is in the game
+	static int initialBeads(int level){
+
+		int beadStart = 0;
+
+		switch(level){
+			case 0:
+			case 1:
+			case 2:
+				beadStart = 8;
+				break;
+			case 3:
+			case 4:
+				beadStart = 4;
+				break;
+			case 5:
+			case 6:
+				beadStart = 2;
+				break;
+			default:
+				beadStart = 1;
+				break;
 
+		}
+		return beadStart;
+	}
+
+	//Saves the beads of every matchbox to a file, see BeadStore.save
+	public void save(Path file) throws IOException {
+		checkEnumerated();
+		beads.save(file);
+	}
+
+	//Loads beads saved by save(Path), replacing the beads of the matchboxes found in the file. The brain is left as it was if the load fails
+	public void load(Path file) throws IOException {
+		checkEnumerated();
+		beads.load(file);
+	}
+
+	//Helper method rejecting the operations that need every matchbox
+	private void checkEnumerated(){
+		if(lazyBeads != null){
+			throw new IllegalStateException("Only the matchboxes played so far exist");
+		}
+	}
+
+	//A game that was not finished is forgotten, without any reward
+	public void startNewGame(CellValue myMove){
+		super.startNewGame(myMove);
+		trajectory.clear();
 	}
 
 	//This method overwrites gameFinished in the Player Interface to support the MENACE learning function
@@ -104,50 +209,34 @@ public class ComputerMenacePlayer extends Player {
 
 	//Gives each move played 3 beads as a reward for a win, making it more likely
 	private void gameWon(){
-
-		MenaceTicTacToeGame currentGame;
-		Integer movePlayed;
-
-		for(int i = 0; i < gamesVisited.size(); i++){
-			currentGame = gamesVisited.get(i);
-			movePlayed = movesPlayed.get(i);
-			currentGame.setBeadCount(movePlayed, currentGame.getBeadCount(movePlayed) + 3);
-		}
-
-		gamesVisited.clear();
-		movesPlayed.clear();
+		reward(3);
 	}
 
 	//Takes one bead away from each move played to penalize it for a loss, making it less likely to happen again
 	private void gameLost(){
-
-		MenaceTicTacToeGame currentGame;
-		Integer movePlayed;
-
-		for(int i = 0; i < gamesVisited.size(); i++){
-			currentGame = gamesVisited.get(i);
-			movePlayed = movesPlayed.get(i);
-			currentGame.setBeadCount(movePlayed, currentGame.getBeadCount(movePlayed) - 1);
-		}
-
-		gamesVisited.clear();
-		movesPlayed.clear();
+		reward(-1);
 	}
 
 	//Gives one bead to each move played as a reward for a win, making it more likely to happen again
 	private void gameDrawn(){
+		reward(1);
+	}
 
-		MenaceTicTacToeGame currentGame;
-		Integer movePlayed;
-
-		for(int i = 0; i < gamesVisited.size(); i++){
-			currentGame = gamesVisited.get(i);
-			movePlayed = movesPlayed.get(i);
-			currentGame.setBeadCount(movePlayed, currentGame.getBeadCount(movePlayed) + 1);
+	//Adds the given number of beads to every move of the trajectory, then forgets it
+	private void reward(int delta){
+		for(int i = 0; i < trajectory.size(); i++){
+			if(lazyBeads != null){
+				lazyBeads.addBeads(trajectory.stateAt(i), trajectory.moveAt(i), delta);
+			} else {
+				beads.addBeads(trajectory.stateAt(i), trajectory.moveAt(i), delta);
+			}
 		}
+		trajectory.clear();
 
-		gamesVisited.clear();
-		movesPlayed.clear();
+		//The slots of the trajectory are no longer needed, so matchboxes can go
+		if(lazyBeads != null){
+			lazyBeads.evict();
+		}
 	}
 
-}
\ No newline at end of file
+}
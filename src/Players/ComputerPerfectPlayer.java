@@ -1,90 +1,136 @@
 package src.Players;
-import java.util.LinkedList;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.stream.IntStream;
+import src.Gameboards.StateGraph;
 import src.Gameboards.TicTacToeGame;
-import src.Gameboards.PerfectTicTacToeGame;
 import src.common.*;
 
 //The theoretical perfect computer player, this is implemented via brute force checking every single game to see what the best winning chances are in each gamestate
 public class ComputerPerfectPlayer extends Player {
-	
-	//allGames represents a LinkedList of LinkedLists which represent all possible unique gamestates
-	//Each LinkedList in allGames corresponds to another layer of depth within the game. For example, in the 1st LinkedList
-	//there would be 1 or 0 cells placed depending on if it went first or second
-	private LinkedList<LinkedList<PerfectTicTacToeGame>> allGames;
+
+	//Outcomes of a game or of a move, from the viewpoint of the player who has to play
+	public static final int NOT_SET = 0;
+	public static final int WIN  = 1;
+	public static final int LOSE = 2;
+	public static final int DRAW = 3;
+
+	//graph holds all possible unique gamestates, shared with every other player of the same board shape
+	private StateGraph graph;
+
+	//outcomes holds the outcome of every state for the player who has to play. The outcome of a move
+	//is the reverse of the outcome of the state it leads to
+	private SolvedTable outcomes;
+
+	//solver searches the games of boards that are not enumerated, null when graph and outcomes are used
+	private NegamaxSolver solver;
 
 	//Constructor
 	public ComputerPerfectPlayer(){
+		this(StateGraph.of(3,3,3));
+	}
+
+	//Builds a player solving every state of a graph, for boards small enough to be enumerated such as 3x4. Large
+	//layers are solved in parallel
+	public ComputerPerfectPlayer(StateGraph graph){
 		super();
 
-		//Initializing allGames
-		allGames = new LinkedList<LinkedList<PerfectTicTacToeGame>>();
-
-		//Creating the lists for the first iteration
-		allGames.add(new LinkedList<PerfectTicTacToeGame>());
-		allGames.get(0).add(new PerfectTicTacToeGame());
-
-		//Build all the other layers by adding the possible next moves to the previously built games
-		//For every move (Perfect Player or their opponent)
-		for(int i=1; i<= 9; i++) {
-			LinkedList<PerfectTicTacToeGame> newList; 	
-			newList = new LinkedList<PerfectTicTacToeGame>();	//Make a new list for the new layer
-			allGames.add(newList);								//Add that list to the allGames list
-			for(PerfectTicTacToeGame game: allGames.get(i-1)){	//For all games in the previous iteration
-				if(game.getGameState() == GameState.PLAYING) {	//If they are still in process
-					for(int j = 0; j < 9; j++) {				//Iterate through their cells
-						if(game.valueAt(j) == CellValue.EMPTY) {								//If a cell is empty
-							PerfectTicTacToeGame newGame = new PerfectTicTacToeGame(game,j);	//Create a new game with this as a base and that move played
-							
-							boolean isNew = true;										//Then, check if that game is already in the new layer
-							for(PerfectTicTacToeGame existingGame: allGames.get(i)){
-								if(newGame.equalsWithSymmetry(existingGame)){
-									isNew = false;
-									break;
-								}
-							}
-							if(isNew) {
-								newList.add(newGame);		//If it is not in the new layer, add it to the new layer
-							}					
-						}
-					}
-				}
+		//Initializing graph and outcomes
+		this.graph = graph;
+		outcomes = solve(graph);
+	}
 
-			}
+	//Builds a player reading the outcomes of the states of a graph from a file saved by an earlier player, or solving
+	//them and saving them to that file if it does not exist yet
+	public ComputerPerfectPlayer(StateGraph graph, Path file) throws IOException {
+		super();
+
+		this.graph = graph;
+		outcomes = solve(graph, file);
+	}
+
+	//Builds a player for any board, that searches each game when it has to play instead of enumerating every state
+	public ComputerPerfectPlayer(int lines, int columns, int sizeWin){
+		super();
+
+		solver = new NegamaxSolver(lines, columns, sizeWin);
+	}
+
+	//Layers with fewer states than this are solved on the calling thread. No layer of the 3x3 graph is that large,
+	//so only larger graphs, such as the 3x4 one, are solved in parallel
+	static final int PARALLEL_LAYER_SIZE = 4096;
+
+	//Reads the outcomes of the states of a graph from a file saved by save, or solves them and saves them to that
+	//file if it does not exist yet. Building a player draws from the master random stream, this does not
+	public static SolvedTable solve(StateGraph graph, Path file) throws IOException {
+		if(Files.exists(file)){
+			return SolvedTable.load(file, graph);
 		}
+		SolvedTable outcomes = solve(graph);
+		outcomes.save(file);
+		return outcomes;
+	}
 
-		//Adding game outcomes
-
-		//For every layer except the last
-		for(int i=8; i>= 0; i--) {	
-			for(PerfectTicTacToeGame game: allGames.get(i)){												//For every game in that layer
-				if(game.getGameOutcome() == PerfectTicTacToeGame.NOT_SET) {									//If the game outcome is NOT_SET
-					for(int j=0; j < 9; j++) {																//For every cell in that game
-						if(game.valueAt(j) == CellValue.EMPTY) {											//If that cell is empty
-							PerfectTicTacToeGame newGame = new PerfectTicTacToeGame(game,j);				//Create a new game with that cell played
-					
-							for(PerfectTicTacToeGame existingGame: allGames.get(i+1)){					
-								if(newGame.equalsWithSymmetry(existingGame)){								//Check if the new game is equal to an existing game from the layer above
-
-									if(existingGame.getGameOutcome() == PerfectTicTacToeGame.WIN) {			//If it is equal to a game from the layer above, reverse the outcome
-										game.setMoveOutcome(j,PerfectTicTacToeGame.LOSE);
-									} else if(existingGame.getGameOutcome() == PerfectTicTacToeGame.LOSE) {
-										game.setMoveOutcome(j,PerfectTicTacToeGame.WIN);
-									} else if(existingGame.getGameOutcome() == PerfectTicTacToeGame.DRAW) {
-										game.setMoveOutcome(j,PerfectTicTacToeGame.DRAW);
-									} else {
-										System.out.println(existingGame);
-										throw new IllegalStateException("This should not be happening");
-									}
-									break;
-								}
-							}						
-						}
-					}
-				}
+	//Solves every state of the graph, from the last layer up to the empty board. The states of a layer only
+	//depend on the layer below, so large layers are split across the threads of the common fork-join pool
+	static SolvedTable solve(StateGraph graph){
+		byte[] gameOutcomes = new byte[graph.size()];
 
+		for(int i=graph.shape.cells; i>= 0; i--) {
+			IntStream layer = IntStream.range(graph.layerStart(i), graph.layerEnd(i));			//Every game in that layer
+			if(graph.layerEnd(i) - graph.layerStart(i) >= PARALLEL_LAYER_SIZE) {
+				layer = layer.parallel();
 			}
+			layer.forEach(id -> gameOutcomes[id] = (byte)solveState(graph, gameOutcomes, id));
 		}
+		return new SolvedTable(graph, gameOutcomes);
+	}
 
+	//Returns the outcome of a state, knowing the outcomes of the layer below
+	private static int solveState(StateGraph graph, byte[] gameOutcomes, int id){
+		GameState gameState = graph.getGameState(id);
+		if(gameState == GameState.XWIN || gameState == GameState.OWIN ){
+			// from the viewpoint of a player who would have to play next, a
+			// game that has just been won is losing
+			return LOSE;
+		} else if(gameState == GameState.DRAW ){
+			return DRAW;
+		}
+		int best = NOT_SET;
+		for(int j=0; j < graph.shape.cells; j++) {												//For every cell in that game
+			int existingGame = graph.child(id, j);												//Find the state reached by playing that cell
+			if(existingGame == -1) {															//If that cell is not empty
+				continue;
+			}
+			best = better(best, reverse(gameOutcomes[existingGame]));							//Reverse the outcome of the state from the layer below
+		}
+		if(best == NOT_SET) {
+			throw new IllegalStateException("This should not be happening");
+		}
+		return best;
+	}
+
+	//Returns the outcome of a state for the player who just played in it, knowing its outcome for the player who has to play
+	static int reverse(int outcome){
+		if(outcome == WIN) {
+			return LOSE;
+		} else if(outcome == LOSE) {
+			return WIN;
+		}
+		return outcome;
+	}
+
+	//Returns the best of two outcomes, a win being better than a draw, itself better than a loss
+	private static int better(int a, int b){
+		if(a == WIN || b == WIN) {
+			return WIN;
+		} else if(a == DRAW || b == DRAW) {
+			return DRAW;
+		} else if(a == LOSE || b == LOSE) {
+			return LOSE;
+		}
+		return NOT_SET;
 	}
 
 
@@ -94,18 +140,86 @@ public class ComputerPerfectPlayer extends Player {
 		if(game.getLevel() == game.lines*game.columns){
 			throw new IllegalArgumentException("Game is finished already!");
 		}
-	
-		// This finds the game at the current level of depth that corresponds to the game provided, and plays the calculated perfect move for it
-		for(PerfectTicTacToeGame perfectGame: allGames.get(game.getLevel())){
-			if(perfectGame.equalsWithSymmetry(game)){
-				game.play(perfectGame.choosePerfectMove());
-				return;
-			}
+
+		if(solver != null){
+			game.play(chooseSearchedMove(game));
+			return;
+		}
+
+		// This finds the state that corresponds to the game provided, and plays the calculated perfect move for it
+		int id = graph.indexOf(game);
+		if(id == -1){
+			//Should never reach here
+			throw new IllegalStateException("Game not found: " + game);
+		}
+
+		//The move is chosen on the canonical form of the state, then mapped back onto the game provided
+		game.play(graph.shape.symmetricCell(graph.symmetryOf(game), choosePerfectMove(id)));
+
+	}
+
+	//Picks, at random, one of the cells of a game whose outcome is the best possible, as found by the solver
+	private int chooseSearchedMove(TicTacToeGame game){
+		if(game.getGameState() != GameState.PLAYING){
+			throw new IllegalStateException("Game already finished");
+		}
+		int cells = game.lines*game.columns;
+		int[] moveOutcomes = new int[cells];
+		int gameOutcome = NOT_SET;
+		for(int i = 0; i < cells; i++) {
+			moveOutcomes[i] = solver.solveMove(game, i);
+			gameOutcome = better(gameOutcome, moveOutcomes[i]);
 		}
 
-		//Should never reach here
-		throw new IllegalStateException("Game not found: " + game);
+		int choices = 0;
+		for(int i = 0; i < cells; i++) {
+			if(moveOutcomes[i] == gameOutcome)
+				choices++;
+		}
+		int randomChoice = random.nextInt(choices);
+		for(int i = 0; i < cells; i++) {
+			if(moveOutcomes[i] == gameOutcome && randomChoice-- == 0)
+				return i;
+		}
+		throw new IllegalStateException("This should not be happening");
+	}
 
+	//Returns the outcome of playing the cell at index move of the canonical form of a state, NOT_SET if it cannot be played
+	private int getMoveOutcome(int id, int move){
+		int child = graph.child(id, move);
+		return (child == -1) ? NOT_SET : reverse(outcomes.getOutcome(child));
+	}
+
+	//Picks, at random, one of the cells of a state whose outcome is the best possible
+	private int choosePerfectMove(int id){
+		if(graph.getGameState(id) != GameState.PLAYING){
+			throw new IllegalStateException("Game already finished");
+		}
+		int cells = graph.shape.cells;
+		int gameOutcome = outcomes.getOutcome(id);
+		int choices = 0;
+		for(int i = 0; i < cells; i++) {
+			if(getMoveOutcome(id, i) == gameOutcome)
+				choices++;
+		}
+
+
+		int randomChoice = random.nextInt(choices);
+		int currentSelection = 0;
+		boolean search = true;
+		while(search) {
+			if(getMoveOutcome(id, currentSelection) == gameOutcome){
+				if(randomChoice == 0) {
+					search = false;
+				} else {
+					randomChoice--;
+					currentSelection++;
+				}
+			} else {
+				currentSelection++;
+			}
+		}
+		return currentSelection;
 	}
 
-}
\ No newline at end of file
+}
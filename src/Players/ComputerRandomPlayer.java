@@ -12,7 +12,7 @@ public class ComputerRandomPlayer extends Player {
 	
 		int choice;
 		do {
-			choice = Utils.generator.nextInt(game.lines*game.columns);
+			choice = random.nextInt(game.lines*game.columns);
 		} while (game.valueAt(choice) != CellValue.EMPTY);
 
 		game.play(choice);
@@ -0,0 +1,277 @@
+//Counters holds the bead counts of a store, or the nodes of its Fenwick trees, in one kind of storage: an array of bytes, shorts,
+//ints or longs, or the ints of a mapped file. Stores only go through this interface, so that they never branch on where their counts live
+package src.Players;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Reads and set are plain, while compareAndSet is atomic: counters
+ * updated from several threads at once must only be changed through
+ * compareAndSet, which never loses an update. Values go through
+ * longs whatever the storage, and each kind of storage tells the
+ * range it can hold: set and compareAndSet must only be given values
+ * in that range.
+ */
+interface Counters {
+
+	//Smallest and largest value a counter can hold
+	long min();
+	long max();
+
+	//Number of counters
+	int length();
+
+	long get(int index);
+
+	void set(int index, long value);
+
+	//Replaces the value of a counter if it still holds the expected one
+	boolean compareAndSet(int index, long expected, long value);
+
+	//Returns new counters of the same kind holding the first values of these ones, the others being 0
+	Counters copyOf(int length);
+
+	//Overwrites every value with the values of other counters of the same length
+	default void copyFrom(Counters other){
+		for(int i = 0; i < length(); i++){
+			set(i, other.get(i));
+		}
+	}
+
+	//Builds length counters of the given size, all at 0
+	static Counters of(BeadStore.CounterSize counterSize, int length){
+		switch(counterSize){
+			case BYTE:
+				return new ByteCounters(new byte[length]);
+			case SHORT:
+				return new ShortCounters(new short[length]);
+			case INT:
+				return new IntCounters(new int[length]);
+			default:
+				throw new IllegalArgumentException("Unknown counter size " + counterSize);
+		}
+	}
+
+	//Builds length counters of the smallest kind that holds every value from -max to max, all at 0
+	static Counters holding(long max, int length){
+		if(max <= Byte.MAX_VALUE){
+			return new ByteCounters(new byte[length]);
+		} else if(max <= Short.MAX_VALUE){
+			return new ShortCounters(new short[length]);
+		} else if(max <= Integer.MAX_VALUE){
+			return new IntCounters(new int[length]);
+		}
+		return new LongCounters(new long[length]);
+	}
+
+	//Builds counters over a buffer holding little-endian ints, the value of index i being at byte 4*i
+	static Counters of(ByteBuffer buffer){
+		return new MappedCounters(buffer);
+	}
+
+	final class ByteCounters implements Counters {
+		private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(byte[].class);
+		private final byte[] values;
+
+		ByteCounters(byte[] values){
+			this.values = values;
+		}
+
+		public long min(){
+			return Byte.MIN_VALUE;
+		}
+
+		public long max(){
+			return Byte.MAX_VALUE;
+		}
+
+		public int length(){
+			return values.length;
+		}
+
+		public long get(int index){
+			return values[index];
+		}
+
+		public void set(int index, long value){
+			values[index] = (byte)value;
+		}
+
+		public boolean compareAndSet(int index, long expected, long value){
+			return ELEMENTS.compareAndSet(values, index, (byte)expected, (byte)value);
+		}
+
+		public Counters copyOf(int length){
+			return new ByteCounters(Arrays.copyOf(values, length));
+		}
+
+		public void copyFrom(Counters other){
+			System.arraycopy(((ByteCounters)other).values, 0, values, 0, values.length);
+		}
+	}
+
+	final class ShortCounters implements Counters {
+		private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(short[].class);
+		private final short[] values;
+
+		ShortCounters(short[] values){
+			this.values = values;
+		}
+
+		public long min(){
+			return Short.MIN_VALUE;
+		}
+
+		public long max(){
+			return Short.MAX_VALUE;
+		}
+
+		public int length(){
+			return values.length;
+		}
+
+		public long get(int index){
+			return values[index];
+		}
+
+		public void set(int index, long value){
+			values[index] = (short)value;
+		}
+
+		public boolean compareAndSet(int index, long expected, long value){
+			return ELEMENTS.compareAndSet(values, index, (short)expected, (short)value);
+		}
+
+		public Counters copyOf(int length){
+			return new ShortCounters(Arrays.copyOf(values, length));
+		}
+
+		public void copyFrom(Counters other){
+			System.arraycopy(((ShortCounters)other).values, 0, values, 0, values.length);
+		}
+	}
+
+	final class IntCounters implements Counters {
+		private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(int[].class);
+		private final int[] values;
+
+		IntCounters(int[] values){
+			this.values = values;
+		}
+
+		public long min(){
+			return Integer.MIN_VALUE;
+		}
+
+		public long max(){
+			return Integer.MAX_VALUE;
+		}
+
+		public int length(){
+			return values.length;
+		}
+
+		public long get(int index){
+			return values[index];
+		}
+
+		public void set(int index, long value){
+			values[index] = (int)value;
+		}
+
+		public boolean compareAndSet(int index, long expected, long value){
+			return ELEMENTS.compareAndSet(values, index, (int)expected, (int)value);
+		}
+
+		public Counters copyOf(int length){
+			return new IntCounters(Arrays.copyOf(values, length));
+		}
+
+		public void copyFrom(Counters other){
+			if(other instanceof IntCounters){
+				System.arraycopy(((IntCounters)other).values, 0, values, 0, values.length);
+			} else {
+				Counters.super.copyFrom(other);
+			}
+		}
+	}
+
+	final class LongCounters implements Counters {
+		private static final VarHandle ELEMENTS = MethodHandles.arrayElementVarHandle(long[].class);
+		private final long[] values;
+
+		LongCounters(long[] values){
+			this.values = values;
+		}
+
+		public long min(){
+			return Long.MIN_VALUE;
+		}
+
+		public long max(){
+			return Long.MAX_VALUE;
+		}
+
+		public int length(){
+			return values.length;
+		}
+
+		public long get(int index){
+			return values[index];
+		}
+
+		public void set(int index, long value){
+			values[index] = value;
+		}
+
+		public boolean compareAndSet(int index, long expected, long value){
+			return ELEMENTS.compareAndSet(values, index, expected, value);
+		}
+
+		public Counters copyOf(int length){
+			return new LongCounters(Arrays.copyOf(values, length));
+		}
+	}
+
+	//The ints of a mapped file, shared with every process mapping it. They cannot be copied into a larger file
+	final class MappedCounters implements Counters {
+		private static final VarHandle ELEMENTS = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+		private final ByteBuffer values;
+
+		MappedCounters(ByteBuffer values){
+			this.values = values;
+		}
+
+		public long min(){
+			return Integer.MIN_VALUE;
+		}
+
+		public long max(){
+			return Integer.MAX_VALUE;
+		}
+
+		public int length(){
+			return values.capacity()/Integer.BYTES;
+		}
+
+		public long get(int index){
+			return (int)ELEMENTS.get(values, index*Integer.BYTES);
+		}
+
+		public void set(int index, long value){
+			ELEMENTS.set(values, index*Integer.BYTES, (int)value);
+		}
+
+		public boolean compareAndSet(int index, long expected, long value){
+			return ELEMENTS.compareAndSet(values, index*Integer.BYTES, (int)expected, (int)value);
+		}
+
+		public Counters copyOf(int length){
+			throw new UnsupportedOperationException("Mapped counters cannot be resized");
+		}
+	}
+
+}
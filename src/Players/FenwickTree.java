@@ -0,0 +1,84 @@
+//FenwickTree keeps a Fenwick tree per matchbox of a store, over the beads of each cell floored at 0, so that a bead is drawn
+//in O(log cells) instead of summing and scanning every cell of the matchbox
+package src.Players;
+import java.util.SplittableRandom;
+
+final class FenwickTree {
+
+	//Number of cells of a board, which is also the number of nodes per tree
+	private final int cells;
+
+	//tree.get(matchbox*cells + j - 1) is node j of the tree of that matchbox, the sum of the beads of the cells
+	//j - (j & -j) to j - 1. The nodes are the smallest counters that hold the beads of a whole matchbox
+	private Counters tree;
+
+	//Builds the trees of capacity matchboxes, all of them empty, for counts that never go over maxCount
+	FenwickTree(int cells, int capacity, long maxCount){
+		this.cells = cells;
+		tree = Counters.holding(maxCount*cells, capacity*cells);
+	}
+
+	//Number of matchboxes that have a tree
+	int capacity(){
+		return tree.length()/cells;
+	}
+
+	//Grows or shrinks the trees to the given number of matchboxes, keeping the trees of those that remain
+	void resize(int capacity){
+		tree = tree.copyOf(capacity*cells);
+	}
+
+	//Rebuilds the tree of a matchbox from its counts, counts.get(countBase + cell) being the beads of each cell
+	void build(int matchbox, Counters counts, int countBase){
+		int base = matchbox*cells;
+		for(int j = 1; j <= cells; j++){
+			tree.set(base + j - 1, Math.max(counts.get(countBase + j - 1), 0));
+		}
+		for(int j = 1; j <= cells; j++){
+			int parent = j + (j & -j);
+			if(parent <= cells){
+				tree.set(base + parent - 1, tree.get(base + parent - 1) + tree.get(base + j - 1));
+			}
+		}
+	}
+
+	//Makes the tree of a matchbox follow a change of the count of a cell, going up from the cell to the root
+	void update(int matchbox, int cell, int previous, int count){
+		int base = matchbox*cells;
+		long delta = (long)Math.max(count, 0) - Math.max(previous, 0);
+		for(int j = cell + 1; j <= cells && delta != 0; j += j & -j){
+			tree.set(base + j - 1, tree.get(base + j - 1) + delta);
+		}
+	}
+
+	/**
+	 * draws a bead from the tree of a matchbox. The cell drawn is
+	 * the same as with a linear scan: the first cell whose running
+	 * total of beads goes past a number drawn uniformly below the
+	 * total.
+	 * @return
+	 *  the cell the bead stands for, -1 if the matchbox holds no bead
+	 */
+	int draw(int matchbox, SplittableRandom random){
+		int base = matchbox*cells;
+		long totalBeads = 0;
+		for(int j = cells; j > 0; j -= j & -j){
+			totalBeads += tree.get(base + j - 1);
+		}
+		if(totalBeads <= 0){
+			return -1;
+		}
+
+		//A matchbox holding fewer beads than an int can count draws them as a linear scan over ints always did
+		long nextMove = (totalBeads <= Integer.MAX_VALUE) ? random.nextInt((int)totalBeads) : random.nextLong(totalBeads);
+		int position = 0;
+		for(int step = Integer.highestOneBit(cells); step > 0; step >>= 1){
+			if(position + step <= cells && tree.get(base + position + step - 1) <= nextMove){
+				position += step;
+				nextMove -= tree.get(base + position - 1);
+			}
+		}
+		return position;
+	}
+
+}
@@ -0,0 +1,246 @@
+//LazyBeadStore holds MENACE matchboxes for boards too large to enumerate: a matchbox is only created the first time its state is played,
+//and the least visited matchboxes are thrown away when there are more than the budget allows
+package src.Players;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.SplittableRandom;
+import src.common.*;
+import src.Gameboards.BoardShape;
+import src.Gameboards.StateKey;
+import src.Gameboards.TicTacToeGame;
+
+public final class LazyBeadStore {
+
+	private final BoardShape shape;
+
+	//Number of cells of a board, which is also the number of counts per matchbox
+	private final int cells;
+
+	//Number of matchboxes kept once evict() has run
+	private final int budget;
+
+	//Maps the canonical key of a state to the slot of its matchbox
+	private final HashMap<StateKey, Integer> slots;
+
+	private final BeadStore.CounterSize counterSize;
+
+	//keys[slot] is the canonical key of the state whose matchbox is in that slot, null if the slot is free,
+	//beads.get(slot*cells + cell) the beads of its cells and visits[slot] how often it was played lately
+	private StateKey[] keys;
+	private Counters beads;
+	private int[] visits;
+
+	//Fenwick tree of the matchbox in each slot, so that a move is drawn in O(log cells)
+	private final FenwickTree tree;
+
+	//Number of slots used: evict() moves the matchboxes it keeps to the first slots, so that there is no free slot in between
+	private int used;
+
+	//Builds a store without any matchbox, keeping at most budget of them after each eviction
+	public LazyBeadStore(int lines, int columns, int sizeWin, int budget){
+		this(lines, columns, sizeWin, budget, BeadStore.CounterSize.INT);
+	}
+
+	//Builds a store whose bead counts take the given size, saturating and halving as in BeadStore. The Fenwick
+	//trees take the smallest counters that hold the beads of a whole matchbox of that size
+	public LazyBeadStore(int lines, int columns, int sizeWin, int budget, BeadStore.CounterSize counterSize){
+		if(budget < 1){
+			throw new IllegalArgumentException("Illegal budget: " + budget + " matchboxes");
+		}
+		shape = BoardShape.of(lines, columns, sizeWin);
+		cells = shape.cells;
+		this.budget = budget;
+		this.counterSize = counterSize;
+		slots = new HashMap<StateKey, Integer>();
+		int capacity = Math.min(budget, 1024);
+		keys = new StateKey[capacity];
+		beads = Counters.of(counterSize, capacity*cells);
+		tree = new FenwickTree(cells, capacity, beads.max());
+		visits = new int[capacity];
+		used = 0;
+	}
+
+	public BoardShape getShape(){
+		return shape;
+	}
+
+	public BeadStore.CounterSize getCounterSize(){
+		return counterSize;
+	}
+
+	//Number of matchboxes in the store
+	public int size(){
+		return slots.size();
+	}
+
+	/**
+	 * returns the slot of the matchbox of the state equal, up to
+	 * symmetry, to the game passed as parameter, creating and
+	 * filling the matchbox if that state was never played. The
+	 * cells of the matchbox are those of the canonical form of the
+	 * game. The slot stays valid until the next call to evict().
+	 */
+	public int slotOf(TicTacToeGame game){
+		if(game.getShape() != shape){
+			throw new IllegalArgumentException("Game shape does not match the store");
+		}
+		StateKey key = game.canonicalKey();
+		Integer slot = slots.get(key);
+		if(slot == null){
+			slot = newSlot();
+			slots.put(key, slot);
+			keys[slot] = key;
+			visits[slot] = 0;
+			int beadStart = ComputerMenacePlayer.initialBeads(game.getLevel());
+			for(int i = 0; i < cells; i++){
+				beads.set(slot*cells + i, (key.valueAt(i) == CellValue.EMPTY) ? beadStart : 0);
+			}
+			tree.build(slot, beads, slot*cells);
+		}
+		visits[slot]++;
+		return slot;
+	}
+
+	//Helper method returning the next slot, growing the arrays if they are full
+	private int newSlot(){
+		if(used == keys.length){
+			resize(2*keys.length);
+		}
+		return used++;
+	}
+
+	//Helper method growing or shrinking the arrays to the given number of slots, keeping the first ones
+	private void resize(int capacity){
+		keys = Arrays.copyOf(keys, capacity);
+		beads = beads.copyOf(capacity*cells);
+		tree.resize(capacity);
+		visits = Arrays.copyOf(visits, capacity);
+	}
+
+	//Canonical key of the state whose matchbox is in the given slot
+	public StateKey key(int slot){
+		return keys[slot];
+	}
+
+	public int getBeadCount(int slot, int cell){
+		return (int)beads.get(slot*cells + cell);
+	}
+
+	//Sets the count of a cell, clamped to the range of the counters
+	public void setBeadCount(int slot, int cell, int count){
+		int previous = getBeadCount(slot, cell);
+		count = (int)Math.max(beads.min(), Math.min(beads.max(), count));
+		beads.set(slot*cells + cell, count);
+		tree.update(slot, cell, previous, count);
+	}
+
+	//Adds delta beads (removes them if delta is negative) to the cell of the matchbox in the given slot. A count
+	//saturates at the minimum of the counters, and a matchbox whose count would go over their maximum is first halved
+	public void addBeads(int slot, int cell, int delta){
+		long count = (long)getBeadCount(slot, cell) + delta;
+		if(count > beads.max()){
+			halve(slot);
+			count = (long)getBeadCount(slot, cell) + delta;
+		}
+		setBeadCount(slot, cell, (int)Math.max(count, beads.min()));
+	}
+
+	//Helper method halving every count of the matchbox in a slot, positive counts being rounded up
+	private void halve(int slot){
+		for(int i = 0; i < cells; i++){
+			int previous = getBeadCount(slot, i);
+			setBeadCount(slot, i, (previous > 0) ? (previous + 1) >> 1 : previous/2);
+		}
+	}
+
+	//Draws a bead from the matchbox in the given slot and returns the cell it stands for. A cell with
+	//a negative count holds no bead, and an empty matchbox plays its first empty cell
+	public int pickMove(int slot, SplittableRandom random){
+		int move = tree.draw(slot, random);
+		if(move != -1){
+			return move;
+		}
+		for(int i = 0; i < cells; i++){
+			if(keys[slot].valueAt(i) == CellValue.EMPTY){
+				return i;
+			}
+		}
+		throw new IllegalStateException("No empty cell in " + keys[slot]);
+	}
+
+	/**
+	 * throws away the least visited matchboxes if there are more
+	 * than the budget, keeping 3/4 of the budget so that evictions
+	 * do not happen after every game. Visits are then halved, so
+	 * that matchboxes that are not played any more lose their rank
+	 * over time. The matchboxes kept move to the first slots, and
+	 * arrays that grew past the budget shrink back to it, so that
+	 * evicted matchboxes give their memory back. Every slot
+	 * returned so far becomes invalid.
+	 */
+	public void evict(){
+		if(slots.size() <= budget){
+			return;
+		}
+		int keep = Math.max(budget - budget/4, 1);
+		int[] counts = new int[slots.size()];
+		int n = 0;
+		for(int slot = 0; slot < used; slot++){
+			if(keys[slot] != null){
+				counts[n++] = visits[slot];
+			}
+		}
+		Arrays.sort(counts);
+
+		//Every matchbox visited less than the threshold goes, then as many as needed of those visited exactly that much
+		int threshold = counts[counts.length - keep];
+		int toRemove = slots.size() - keep;
+		for(int slot = 0; slot < used && toRemove > 0; slot++){
+			if(keys[slot] != null && visits[slot] < threshold){
+				remove(slot);
+				toRemove--;
+			}
+		}
+		for(int slot = 0; slot < used && toRemove > 0; slot++){
+			if(keys[slot] != null && visits[slot] == threshold){
+				remove(slot);
+				toRemove--;
+			}
+		}
+
+		//Moves the matchboxes kept to the first slots, in the same order
+		int next = 0;
+		for(int slot = 0; slot < used; slot++){
+			if(keys[slot] != null){
+				if(slot != next){
+					move(slot, next);
+				}
+				visits[next] >>>= 1;
+				next++;
+			}
+		}
+		used = next;
+		if(keys.length > budget){
+			resize(Math.max(budget, used));
+		}
+	}
+
+	//Helper method freeing a slot
+	private void remove(int slot){
+		slots.remove(keys[slot]);
+		keys[slot] = null;
+	}
+
+	//Helper method moving the matchbox of a slot to a free slot
+	private void move(int from, int to){
+		keys[to] = keys[from];
+		keys[from] = null;
+		visits[to] = visits[from];
+		for(int i = 0; i < cells; i++){
+			beads.set(to*cells + i, beads.get(from*cells + i));
+		}
+		tree.build(to, beads, to*cells);
+		slots.put(keys[to], to);
+	}
+
+}
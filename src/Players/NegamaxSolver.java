@@ -0,0 +1,315 @@
+//NegamaxSolver finds the outcome of any game by depth first search, for boards too large to enumerate every state
+package src.Players;
+import java.util.Arrays;
+import src.common.*;
+import src.Gameboards.BoardShape;
+import src.Gameboards.StateGraph;
+import src.Gameboards.TicTacToeGame;
+
+/**
+ * The search is a negamax with alpha-beta pruning over the values
+ * 1 (win), 0 (draw) and -1 (loss) for the player who has to play.
+ * Games are explored in place with play and undo. Positions are
+ * remembered in a transposition table keyed by the symmetric Zobrist
+ * hash of the game, so that positions equal up to symmetry are
+ * searched once. Moves are tried in this order: a move that wins at
+ * once, the best move remembered for the position, then the cells
+ * that belong to the most winning lines first.
+ *
+ * A solver keeps its table from one call to the next and is not
+ * thread safe: each player uses its own.
+ */
+public final class NegamaxSolver {
+
+	//Kinds of values stored in the table: exact, or only a bound because of a cutoff
+	private static final int EXACT = 1;
+	private static final int LOWER = 2;
+	private static final int UPPER = 3;
+
+	//Number of slots probed before giving up on a position
+	private static final int MAX_PROBES = 8;
+
+	private final BoardShape shape;
+
+	//Open addressing table: keys[slot] is the symmetric hash of a position, entries[slot] packs
+	//((move+1) << 4) | (bound << 2) | (value+1), 0 meaning the slot is empty. The move is a cell of
+	//the position as seen through the symmetry that gives the smallest Zobrist hash
+	private final long[] keys;
+	private final int[] entries;
+	private final int mask;
+
+	//The cells of the board, those that belong to the most winning lines first
+	private final int[] staticOrder;
+
+	//orders[level] holds the moves tried at that level, so that the search allocates nothing
+	private final int[][] orders;
+
+	//Number of positions searched so far
+	private long nodes;
+
+	//Builds a solver for the given board with a table of 2^20 positions
+	public NegamaxSolver(int lines, int columns, int sizeWin){
+		this(lines, columns, sizeWin, 20);
+	}
+
+	//Builds a solver for the given board with a table of 2^tableBits positions
+	public NegamaxSolver(int lines, int columns, int sizeWin, int tableBits){
+		if(tableBits < 1 || tableBits > 30){
+			throw new IllegalArgumentException("Illegal table size: 2^" + tableBits);
+		}
+		shape = BoardShape.of(lines, columns, sizeWin);
+		keys = new long[1 << tableBits];
+		entries = new int[1 << tableBits];
+		mask = (1 << tableBits) - 1;
+
+		Integer[] cells = new Integer[shape.cells];
+		for(int i = 0; i < shape.cells; i++){
+			cells[i] = i;
+		}
+		Arrays.sort(cells, (a, b) -> (shape.linesThrough(b) != shape.linesThrough(a)) ?
+			shape.linesThrough(b) - shape.linesThrough(a) : a - b);
+		staticOrder = new int[shape.cells];
+		for(int i = 0; i < shape.cells; i++){
+			staticOrder[i] = cells[i];
+		}
+		orders = new int[shape.cells + 1][shape.cells];
+	}
+
+	public BoardShape getShape(){
+		return shape;
+	}
+
+	public long getNodes(){
+		return nodes;
+	}
+
+	/**
+	 * returns the outcome of a game for the player who has to play,
+	 * as one of the constants of ComputerPerfectPlayer. The game is
+	 * left exactly as it was.
+	 * @return
+	 *  WIN, LOSE or DRAW
+	 */
+	public int solve(TicTacToeGame game){
+		if(game.getShape() != shape){
+			throw new IllegalArgumentException("Game shape does not match the solver");
+		}
+		return toOutcome(value(game));
+	}
+
+	/**
+	 * returns the outcome of playing the cell at index i of a game,
+	 * for the player who plays it, as one of the constants of
+	 * ComputerPerfectPlayer. The game is left exactly as it was.
+	 * @return
+	 *  WIN, LOSE or DRAW, NOT_SET if the cell cannot be played
+	 */
+	public int solveMove(TicTacToeGame game, int i){
+		if(game.getShape() != shape){
+			throw new IllegalArgumentException("Game shape does not match the solver");
+		}
+		if(game.getGameState() != GameState.PLAYING || game.valueAt(i) != CellValue.EMPTY){
+			return ComputerPerfectPlayer.NOT_SET;
+		}
+		game.play(i);
+		int value = -value(game);
+		game.undo();
+		return toOutcome(value);
+	}
+
+	//Helper method returning the value of a game for the player who has to play, finished or not
+	private int value(TicTacToeGame game){
+		GameState gameState = game.getGameState();
+		if(gameState == GameState.XWIN || gameState == GameState.OWIN){
+			return -1;
+		} else if(gameState == GameState.DRAW){
+			return 0;
+		}
+		return negamax(game, -1, 1);
+	}
+
+	//Helper method turning a value into one of the outcomes of ComputerPerfectPlayer
+	private static int toOutcome(int value){
+		if(value > 0){
+			return ComputerPerfectPlayer.WIN;
+		} else if(value < 0){
+			return ComputerPerfectPlayer.LOSE;
+		}
+		return ComputerPerfectPlayer.DRAW;
+	}
+
+	//Searches a game still in progress, returning its value if it lies strictly between alpha and beta, a bound otherwise
+	private int negamax(TicTacToeGame game, int alpha, int beta){
+		nodes++;
+		int cells = shape.cells;
+
+		//A move that wins at once is the best there is
+		for(int i = 0; i < cells; i++){
+			if(game.valueAt(i) == CellValue.EMPTY){
+				game.play(i);
+				boolean won = game.getGameState() != GameState.PLAYING && game.getGameState() != GameState.DRAW;
+				game.undo();
+				if(won){
+					return 1;
+				}
+			}
+		}
+
+		//Looks the position up, in the orientation with the smallest hash
+		int symmetry = 0;
+		long hash = game.zobristHash(0);
+		for(int s = 1; s < shape.symmetryCount(); s++){
+			if(game.zobristHash(s) < hash){
+				hash = game.zobristHash(s);
+				symmetry = s;
+			}
+		}
+		int slot = find(hash);
+		int bestMove = -1;
+		if(slot != -1){
+			int entry = entries[slot];
+			int value = (entry & 3) - 1;
+			int bound = (entry >>> 2) & 3;
+			if(bound == EXACT){
+				return value;
+			} else if(bound == LOWER){
+				alpha = Math.max(alpha, value);
+			} else {
+				beta = Math.min(beta, value);
+			}
+			if(alpha >= beta){
+				return value;
+			}
+			bestMove = shape.symmetricCell(symmetry, (entry >>> 4) - 1);
+		}
+
+		//The remembered move first, then the static order
+		int[] order = orders[game.getLevel()];
+		int count = 0;
+		if(bestMove != -1){
+			order[count++] = bestMove;
+		}
+		for(int i: staticOrder){
+			if(i != bestMove && game.valueAt(i) == CellValue.EMPTY){
+				order[count++] = i;
+			}
+		}
+
+		int alphaStart = alpha;
+		int best = -2;
+		for(int k = 0; k < count; k++){
+			int i = order[k];
+			game.play(i);
+			int value = (game.getGameState() == GameState.PLAYING) ? -negamax(game, -beta, -alpha) : 0;
+			game.undo();
+			if(value > best){
+				best = value;
+				bestMove = i;
+			}
+			if(best > alpha){
+				alpha = best;
+			}
+			if(alpha >= beta){
+				break;
+			}
+		}
+
+		int bound = (best <= alphaStart) ? UPPER : (best >= beta) ? LOWER : EXACT;
+		store(hash, ((shape.symmetricCell(shape.inverse(symmetry), bestMove) + 1) << 4) | (bound << 2) | (best + 1));
+		return best;
+	}
+
+	//Helper method returning the slot of a position in the table, -1 if it is not there
+	private int find(long hash){
+		int slot = (int)hash & mask;
+		for(int probe = 0; probe < MAX_PROBES; probe++){
+			if(entries[slot] == 0){
+				return -1;
+			}
+			if(keys[slot] == hash){
+				return slot;
+			}
+			slot = (slot + 1) & mask;
+		}
+		return -1;
+	}
+
+	//Helper method storing a position in the first free slot, or over the first slot probed when they are all taken
+	private void store(long hash, int entry){
+		int first = (int)hash & mask;
+		int slot = first;
+		for(int probe = 0; probe < MAX_PROBES; probe++){
+			if(entries[slot] == 0 || keys[slot] == hash){
+				keys[slot] = hash;
+				entries[slot] = entry;
+				return;
+			}
+			slot = (slot + 1) & mask;
+		}
+		keys[first] = hash;
+		entries[first] = entry;
+	}
+
+	//Checks the solver against the retrograde analysis of ComputerPerfectPlayer on every state of a graph, and every move
+	//of that state, seen in every orientation of the board. A single solver is used, so that positions come back from the
+	//table in other orientations than the one they were stored in
+	private static void test(int lines, int columns, int sizeWin){
+		System.out.println("testing " + lines + " lines, " + columns + " columns and " + sizeWin + " to win.");
+		StateGraph graph = StateGraph.of(lines, columns, sizeWin);
+		SolvedTable outcomes = ComputerPerfectPlayer.solve(graph);
+		NegamaxSolver solver = new NegamaxSolver(lines, columns, sizeWin);
+		BoardShape shape = solver.getShape();
+		long positions = 0;
+		long moves = 0;
+		long disagreements = 0;
+		for(int id = 0; id < graph.size(); id++){
+			for(int s = 0; s < shape.symmetryCount(); s++){
+				TicTacToeGame game = orient(graph, id, s);
+				positions++;
+				if(solver.solve(game) != outcomes.getOutcome(id)){
+					disagreements++;
+				}
+				for(int i = 0; i < shape.cells; i++){
+					int child = graph.child(id, i);
+					if(child != -1){
+						moves++;
+						if(solver.solveMove(game, shape.symmetricCell(s, i)) != ComputerPerfectPlayer.reverse(outcomes.getOutcome(child))){
+							disagreements++;
+						}
+					}
+				}
+			}
+		}
+		System.out.println(positions + " positions and " + moves + " moves from " + graph.size() + " states, " + disagreements + " disagreements, " + solver.getNodes() + " nodes searched");
+	}
+
+	//Helper method playing the canonical form of a state once symmetry s is applied to it, X and O taking turns
+	private static TicTacToeGame orient(StateGraph graph, int id, int s){
+		BoardShape shape = graph.shape;
+		TicTacToeGame game = new TicTacToeGame(shape.lines, shape.columns, shape.sizeWin);
+		int x = 0;
+		int o = 0;
+		for(int level = 0; level < graph.getLevel(id); level++){
+			CellValue player = (level%2 == 0) ? CellValue.X : CellValue.O;
+			int i = (player == CellValue.X) ? x : o;
+			while(graph.valueAt(id, i) != player){
+				i++;
+			}
+			game.play(shape.symmetricCell(s, i));
+			if(player == CellValue.X){
+				x = i + 1;
+			} else {
+				o = i + 1;
+			}
+		}
+		return game;
+	}
+
+	public static void main(String[] args){
+
+		test(3,3,3);
+		test(3,4,3);
+
+	}
+
+}
@@ -1,5 +1,6 @@
 //Abstract class player is an interface for all player types
 package src.Players;
+import java.util.SplittableRandom;
 import src.common.*;
 import src.Gameboards.TicTacToeGame;
 
@@ -14,6 +15,8 @@ public abstract class Player {
 	private char[] slidingWindow;
 	private int currentSlidingIndex;
 	protected CellValue myMove;
+	//Random stream of this player, only used by the thread playing its games
+	protected SplittableRandom random;
 
 	public static final int WINDOWSIZE = 50;
 	public static final char IWIN = 'w';
@@ -27,10 +30,28 @@ public abstract class Player {
 		numberOfGame= 0;
 		slidingWindow = new char[WINDOWSIZE];
 		currentSlidingIndex= 0;
+		random = Utils.newRandom();
 	}
 
 	public abstract void play(TicTacToeGame game);
 
+	//Replaces the random stream of the player, to replay the same games from a given seed
+	public void setRandom(SplittableRandom random){
+		this.random = random;
+	}
+
+	public int getNumberOfWin(){
+		return numberOfWin;
+	}
+
+	public int getNumberOfLoss(){
+		return numberOfLoss;
+	}
+
+	public int getNumberOfDraw(){
+		return numberOfDraw;
+	}
+
 	public void startNewGame(CellValue myMove){
 		this.myMove = myMove;
 	}
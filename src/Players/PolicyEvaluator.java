@@ -0,0 +1,265 @@
+//PolicyEvaluator computes the exact chances of a MENACE brain against an opponent, without playing any game
+package src.Players;
+import java.util.stream.IntStream;
+import src.common.*;
+import src.Gameboards.StateGraph;
+import src.Gameboards.TicTacToeGame;
+
+/**
+ * The evaluator follows the probability of reaching every state of
+ * the graph, layer by layer from the empty board. A state pulls its
+ * probability from the states of the layer above that lead to it,
+ * through the reverse edges of the graph, so that the states of a
+ * layer can be computed in parallel. The chances of the brain are
+ * then the probabilities of the finished states.
+ *
+ * MENACE plays each cell of the canonical form of a state with a
+ * probability proportional to its beads (negative counts weighing
+ * zero, an empty matchbox playing its first empty cell). The random
+ * opponent plays every empty cell with the same probability, and the
+ * perfect opponent every cell with the best outcome.
+ */
+public final class PolicyEvaluator {
+
+	//The opponents whose moves can be computed exactly
+	public enum Opponent { RANDOM, PERFECT }
+
+	//Chances of the brain once every game is finished
+	public static final class Result {
+		public final double win;
+		public final double draw;
+		public final double loss;
+
+		Result(double win, double draw, double loss){
+			this.win = win;
+			this.draw = draw;
+			this.loss = loss;
+		}
+
+		public String toString(){
+			return String.format("win %.6f, draw %.6f, loss %.6f", win, draw, loss);
+		}
+	}
+
+	private final StateGraph graph;
+
+	//The edges leading to state id are edges[edgeStart[id]] to edges[edgeStart[id+1]-1], an edge
+	//being parent*cells + cell for the cell of the canonical form of parent that leads to id
+	private final int[] edgeStart;
+	private final int[] edges;
+
+	//Outcomes of the perfect opponent, solved the first time they are needed
+	private SolvedTable solved;
+
+	public PolicyEvaluator(StateGraph graph){
+		this.graph = graph;
+		int cells = graph.shape.cells;
+
+		edgeStart = new int[graph.size() + 1];
+		for(int id = 0; id < graph.size(); id++){
+			for(int cell = 0; cell < cells; cell++){
+				int child = graph.child(id, cell);
+				if(child != -1){
+					edgeStart[child + 1]++;
+				}
+			}
+		}
+		for(int id = 0; id < graph.size(); id++){
+			edgeStart[id + 1] += edgeStart[id];
+		}
+		edges = new int[edgeStart[graph.size()]];
+		int[] next = new int[graph.size()];
+		for(int id = 0; id < graph.size(); id++){
+			for(int cell = 0; cell < cells; cell++){
+				int child = graph.child(id, cell);
+				if(child != -1){
+					edges[edgeStart[child] + next[child]++] = id*cells + cell;
+				}
+			}
+		}
+	}
+
+	/**
+	 * computes the exact chances of a brain playing with the given
+	 * symbol against an opponent, the beads being left untouched.
+	 * @param beads
+	 *  the beads of the brain, on the graph of this evaluator
+	 * @param side
+	 *  CellValue.X if the brain plays first, CellValue.O otherwise
+	 * @return
+	 *  the probabilities that the brain wins, draws and loses
+	 */
+	public Result evaluate(BeadStore beads, CellValue side, Opponent opponent){
+		if(beads.getGraph() != graph){
+			throw new IllegalArgumentException("Beads of another graph");
+		}
+		if(side == CellValue.EMPTY){
+			throw new IllegalArgumentException("The brain must play X or O");
+		}
+		SolvedTable outcomes = (opponent == Opponent.PERFECT) ? solvedTable() : null;
+		int cells = graph.shape.cells;
+
+		//moves[id*cells + cell] is the probability of playing that cell in state id, reach[id] of getting to state id
+		double[] moves = new double[graph.size()*cells];
+		double[] reach = new double[graph.size()];
+		reach[0] = 1;
+
+		for(int level = 0; level <= cells; level++){
+			boolean brainPlays = (level%2 == 0) == (side == CellValue.X);
+			IntStream layer = IntStream.range(graph.layerStart(level), graph.layerEnd(level));
+			if(graph.layerEnd(level) - graph.layerStart(level) >= ComputerPerfectPlayer.PARALLEL_LAYER_SIZE){
+				layer = layer.parallel();
+			}
+			layer.forEach(id -> {
+				if(id != 0){
+					double probability = 0;
+					for(int e = edgeStart[id]; e < edgeStart[id + 1]; e++){
+						probability += reach[edges[e]/cells]*moves[edges[e]];
+					}
+					reach[id] = probability;
+				}
+				if(graph.getGameState(id) == GameState.PLAYING){
+					if(brainPlays){
+						setMenaceMoves(beads, id, moves);
+					} else {
+						setOpponentMoves(outcomes, id, moves);
+					}
+				}
+			});
+		}
+
+		double win = 0;
+		double draw = 0;
+		double loss = 0;
+		GameState brainWins = (side == CellValue.X) ? GameState.XWIN : GameState.OWIN;
+		for(int id = 0; id < graph.size(); id++){
+			GameState gameState = graph.getGameState(id);
+			if(gameState == GameState.DRAW){
+				draw += reach[id];
+			} else if(gameState == brainWins){
+				win += reach[id];
+			} else if(gameState != GameState.PLAYING){
+				loss += reach[id];
+			}
+		}
+		return new Result(win, draw, loss);
+	}
+
+	//Helper method setting the probabilities of the moves MENACE draws from the matchbox of a state
+	private void setMenaceMoves(BeadStore beads, int id, double[] moves){
+		int cells = graph.shape.cells;
+		long totalBeads = 0;
+		for(int i = 0; i < cells; i++){
+			totalBeads += Math.max(beads.getBeadCount(id, i), 0);
+		}
+		if(totalBeads <= 0){
+			for(int i = 0; i < cells; i++){
+				if(graph.valueAt(id, i) == CellValue.EMPTY){
+					moves[id*cells + i] = 1;
+					return;
+				}
+			}
+		}
+		for(int i = 0; i < cells; i++){
+			moves[id*cells + i] = (double)Math.max(beads.getBeadCount(id, i), 0)/totalBeads;
+		}
+	}
+
+	//Helper method setting the probabilities of the moves of the opponent, perfect if outcomes is not null, random otherwise
+	private void setOpponentMoves(SolvedTable outcomes, int id, double[] moves){
+		int cells = graph.shape.cells;
+		int choices = 0;
+		for(int i = 0; i < cells; i++){
+			if(isOpponentChoice(outcomes, id, i)){
+				choices++;
+			}
+		}
+		for(int i = 0; i < cells; i++){
+			moves[id*cells + i] = isOpponentChoice(outcomes, id, i) ? 1.0/choices : 0;
+		}
+	}
+
+	//Helper method checking if the opponent may play the cell of a state
+	private boolean isOpponentChoice(SolvedTable outcomes, int id, int cell){
+		int child = graph.child(id, cell);
+		if(child == -1){
+			return false;
+		}
+		return outcomes == null || ComputerPerfectPlayer.reverse(outcomes.getOutcome(child)) == outcomes.getOutcome(id);
+	}
+
+	//Helper method solving the graph for the perfect opponent once
+	private synchronized SolvedTable solvedTable(){
+		if(solved == null){
+			solved = ComputerPerfectPlayer.solve(graph);
+		}
+		return solved;
+	}
+
+	//Helper method playing one game between two players, learning from it only if learn is true, and returning its final state
+	private static GameState playGame(Player x, Player o, boolean learn){
+		TicTacToeGame game = new TicTacToeGame();
+		x.startNewGame(CellValue.X);
+		o.startNewGame(CellValue.O);
+		Player[] players = { x, o };
+		for(int turn = 0; game.getGameState() == GameState.PLAYING; turn++){
+			players[turn%2].play(game);
+		}
+		if(learn){
+			x.gameFinished(game.getGameState());
+			o.gameFinished(game.getGameState());
+		}
+		return game.getGameState();
+	}
+
+	//Checks the exact chances of a partly trained brain against the results of games it plays without learning, for
+	//each side and opponent. Every difference should stay within a few standard errors of the sampled frequency
+	private static void test(int trainingGames, int games){
+		ComputerMenacePlayer brain = new ComputerMenacePlayer();
+		Player random = new ComputerRandomPlayer();
+		for(int g = 0; g < trainingGames; g++){
+			if(g%2 == 0){
+				playGame(brain, random, true);
+			} else {
+				playGame(random, brain, true);
+			}
+		}
+		BeadStore beads = brain.snapshot();
+		PolicyEvaluator evaluator = new PolicyEvaluator(beads.getGraph());
+		System.out.println("testing a brain trained for " + trainingGames + " games against " + games + " games per side and opponent.");
+
+		for(Opponent opponent: Opponent.values()){
+			Player other = (opponent == Opponent.PERFECT) ? new ComputerPerfectPlayer() : new ComputerRandomPlayer();
+			for(CellValue side: new CellValue[] { CellValue.X, CellValue.O }){
+				Result exact = evaluator.evaluate(beads, side, opponent);
+				GameState brainWins = (side == CellValue.X) ? GameState.XWIN : GameState.OWIN;
+				int win = 0;
+				int draw = 0;
+				for(int g = 0; g < games; g++){
+					GameState result = (side == CellValue.X) ? playGame(brain, other, false) : playGame(other, brain, false);
+					if(result == brainWins){
+						win++;
+					} else if(result == GameState.DRAW){
+						draw++;
+					}
+				}
+				double worst = Math.max(deviation(exact.win, win, games), deviation(exact.draw, draw, games));
+				System.out.printf("%s as %s: exact %s, sampled win %.6f, draw %.6f, %.2f standard errors apart%n",
+					opponent, side, exact, (double)win/games, (double)draw/games, worst);
+			}
+		}
+	}
+
+	//Helper method returning how many standard errors a sampled frequency lies from its exact probability
+	private static double deviation(double probability, int count, int games){
+		double error = Math.sqrt(Math.max(probability*(1 - probability), 1e-12)/games);
+		return Math.abs((double)count/games - probability)/error;
+	}
+
+	public static void main(String[] args){
+
+		test(2000, 100000);
+
+	}
+
+}
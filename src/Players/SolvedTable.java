@@ -0,0 +1,126 @@
+//SolvedTable holds the outcome of every state of a graph for the player who has to play, packed at 2 bits per state
+package src.Players;
+import java.io.IOException;
+import java.nio.BufferUnderflowException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import src.Gameboards.BoardShape;
+import src.Gameboards.StateGraph;
+import src.Gameboards.StateKey;
+
+public final class SolvedTable {
+
+	//First bytes of a saved table ("MNPS"), version of the format, and size of the header
+	public static final int FILE_MAGIC = 0x4D4E5053;
+	public static final int FILE_VERSION = 2;
+	private static final int HEADER_BYTES = 6*Integer.BYTES + Long.BYTES;
+
+	private final StateGraph graph;
+
+	//The outcome of state id is in the bits 2*(id%4) and 2*(id%4)+1 of byte id/4. Never modified once built
+	private final ByteBuffer packed;
+
+	//Packs the outcomes passed as parameter, outcomes[id] being the outcome of the state with that id
+	SolvedTable(StateGraph graph, byte[] outcomes){
+		if(outcomes.length != graph.size()){
+			throw new IllegalArgumentException("Expected " + graph.size() + " outcomes, got " + outcomes.length);
+		}
+		this.graph = graph;
+		packed = ByteBuffer.allocate((outcomes.length + 3)/4);
+		for(int id = 0; id < outcomes.length; id++){
+			int index = id >>> 2;
+			packed.put(index, (byte)(packed.get(index) | (outcomes[id] << ((id & 3)*2))));
+		}
+	}
+
+	private SolvedTable(StateGraph graph, ByteBuffer packed){
+		this.graph = graph;
+		this.packed = packed;
+	}
+
+	//Returns the outcome (ComputerPerfectPlayer.WIN, LOSE or DRAW) of the state with the given id for the player who has to play
+	public int getOutcome(int id){
+		return (packed.get(id >>> 2) >>> ((id & 3)*2)) & 3;
+	}
+
+	/**
+	 * saves the table to a file: FILE_MAGIC, FILE_VERSION, the
+	 * lines, columns and sizeWin of the board and the number of
+	 * states, as big-endian ints, the checksum of the canonical keys
+	 * of the graph as a big-endian long, then the packed outcomes.
+	 */
+	public void save(Path file) throws IOException {
+		BoardShape shape = graph.shape;
+		ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+		header.putInt(FILE_MAGIC).putInt(FILE_VERSION).putInt(shape.lines).putInt(shape.columns).putInt(shape.sizeWin).putInt(graph.size()).putLong(keyChecksum(graph));
+		header.flip();
+		ByteBuffer body = packed.duplicate();
+		body.clear();
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.WRITE, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING)){
+			while(header.hasRemaining()){
+				channel.write(header);
+			}
+			while(body.hasRemaining()){
+				channel.write(body);
+			}
+		}
+	}
+
+	/**
+	 * maps a table saved by save(Path). The outcomes are read from
+	 * the mapping when they are asked for, they are not copied.
+	 * @throws IOException
+	 *  if the file cannot be read, is not a saved table, or was
+	 *  saved for another graph, including a graph of the same board
+	 *  whose states are not numbered in the same order
+	 */
+	public static SolvedTable load(Path file, StateGraph graph) throws IOException {
+		BoardShape shape = graph.shape;
+		ByteBuffer in;
+		try(FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)){
+			in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+		}
+		try{
+			if(in.getInt() != FILE_MAGIC){
+				throw new IOException(file + " is not a solved table");
+			}
+			int version = in.getInt();
+			if(version != FILE_VERSION){
+				throw new IOException("Unsupported solved table version " + version + " in " + file);
+			}
+			int lines = in.getInt();
+			int columns = in.getInt();
+			int sizeWin = in.getInt();
+			int size = in.getInt();
+			if(lines != shape.lines || columns != shape.columns || sizeWin != shape.sizeWin || size != graph.size()){
+				throw new IOException(file + " holds a table of " + size + " states for a " + lines + "x" + columns + " board, " + sizeWin + " to win");
+			}
+			if(in.getLong() != keyChecksum(graph)){
+				throw new IOException(file + " was saved for states numbered in another order");
+			}
+		} catch(BufferUnderflowException e){
+			throw new IOException(file + " is truncated", e);
+		}
+		if(in.remaining() != (graph.size() + 3)/4){
+			throw new IOException(file + " has " + in.remaining() + " bytes of outcomes, expected " + (graph.size() + 3)/4);
+		}
+		return new SolvedTable(graph, in.slice());
+	}
+
+	//Helper method hashing the canonical key of every state in the order of their ids, so that a table is only
+	//read back by a graph that gives each state the same id
+	private static long keyChecksum(StateGraph graph){
+		long checksum = 0;
+		for(int id = 0; id < graph.size(); id++){
+			StateKey key = graph.key(id);
+			for(int w = 0; w < key.length(); w++){
+				checksum = (checksum ^ key.word(w))*0x9E3779B97F4A7C15L;
+				checksum ^= checksum >>> 29;
+			}
+		}
+		return checksum;
+	}
+
+}
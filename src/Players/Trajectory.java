@@ -0,0 +1,54 @@
+//Trajectory records the moves a player made during one game, in primitive arrays that are reused from one game to the next
+package src.Players;
+
+final class Trajectory {
+
+	//states[i], symmetries[i] and moves[i] are the id of the state of the i-th move, the symmetry
+	//mapping the game onto that state, and the (canonical) cell played
+	private final int[] states;
+	private final byte[] symmetries;
+	private final int[] moves;
+
+	//Number of moves recorded so far
+	private int size;
+
+	//Builds an empty trajectory holding at most capacity moves
+	Trajectory(int capacity){
+		states = new int[capacity];
+		symmetries = new byte[capacity];
+		moves = new int[capacity];
+		size = 0;
+	}
+
+	void add(int state, int symmetry, int move){
+		if(size == moves.length){
+			throw new IllegalStateException("Trajectory is full: " + size + " moves");
+		}
+		states[size] = state;
+		symmetries[size] = (byte)symmetry;
+		moves[size] = move;
+		size++;
+	}
+
+	int size(){
+		return size;
+	}
+
+	int stateAt(int i){
+		return states[i];
+	}
+
+	int symmetryAt(int i){
+		return symmetries[i];
+	}
+
+	int moveAt(int i){
+		return moves[i];
+	}
+
+	//Forgets every move, keeping the arrays for the next game
+	void clear(){
+		size = 0;
+	}
+
+}
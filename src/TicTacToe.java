@@ -1,4 +1,6 @@
 package src;
+import java.io.IOException;
+import java.nio.file.Paths;
 import src.common.*;
 import src.Gameboards.*;
 import src.Players.*;
@@ -8,27 +10,9 @@ public class TicTacToe {
     //Defines the amount of training time for each MENACE training operation
     public static final int TRAINING_ROUNDS = 500;
 
-    //This method works the logistics of training MENACE
+    //This method works the logistics of training MENACE, the games being played by the training engine
     private static void train(Player[] players) {
-
-        //Similarly to how we randomize the starting player in the main method, we randomize the starting player here as well
-        int first  = Utils.generator.nextInt(2);
-        int numberOfPlays = TRAINING_ROUNDS;
-
-        //This loop iterates through TRAINING_ROUNDS number of games 
-        while(numberOfPlays > 0) {
-            TicTacToeGame game = new TicTacToeGame();
-            int turn = (first++)%2;
-            players[turn%2].startNewGame(CellValue.X);      //Determines who gets X
-            players[(turn+1)%2].startNewGame(CellValue.O);  //Determines who gets O
-            while(game.getGameState() == GameState.PLAYING) {
-                players[turn%2].play(game);
-                turn++;
-            }
-            players[0].gameFinished(game.getGameState());
-            players[1].gameFinished(game.getGameState());
-            numberOfPlays--;
-        }
+        new TrainingEngine(TRAINING_ROUNDS, 1).train(new Player[][] { players });
         System.out.println("player 1: " + players[0]) ;  
         System.out.println("player 2: " + players[1]) ;  
    }
@@ -50,7 +34,7 @@ public class TicTacToe {
         Player[] players = new Player[2];
 
         //This is an integer that randomly determines who goes first in the first round in a MENACE vs Player game, it alternates for every game after
-        int first = Utils.generator.nextInt(2);
+        int first = Utils.newRandom().nextInt(2);
 
         //We instantiate the main MENACE set to play, in every option below it is a player
         players[0] = new ComputerMenacePlayer();
@@ -63,6 +47,9 @@ public class TicTacToe {
             System.out.println("(3) Train Menace against random player");
             System.out.println("(4) Train Menace against another menace");
             System.out.println("(5) Delete (both) Menace training sets");
+            System.out.println("(6) Save Menace training set");
+            System.out.println("(7) Load Menace training set");
+            System.out.println("(8) Evaluate Menace against random and perfect players");
             System.out.println("(Q) Quit");
             String answer = Utils.console.readLine().toLowerCase();
 
@@ -72,6 +59,32 @@ public class TicTacToe {
                 stop = true;
                 break;
 
+                case "6":
+                case "7":
+                //Saves or loads the main MENACE set, to or from a file named by the user
+                System.out.println("File name:");
+                String fileName = Utils.console.readLine();
+                try {
+                    if(answer.equals("6")) {
+                        ((ComputerMenacePlayer)players[0]).save(Paths.get(fileName));
+                    } else {
+                        ((ComputerMenacePlayer)players[0]).load(Paths.get(fileName));
+                    }
+                } catch(IOException e) {
+                    System.out.println("Could not " + (answer.equals("6") ? "save" : "load") + " " + fileName + ": " + e.getMessage());
+                }
+                break;
+
+                case "8":
+                //Computes the exact chances of the main MENACE set, playing first and second
+                BeadStore beads = ((ComputerMenacePlayer)players[0]).snapshot();
+                PolicyEvaluator evaluator = new PolicyEvaluator(beads.getGraph());
+                for(PolicyEvaluator.Opponent opponent: PolicyEvaluator.Opponent.values()) {
+                    System.out.println("As X against " + opponent + ": " + evaluator.evaluate(beads, CellValue.X, opponent));
+                    System.out.println("As O against " + opponent + ": " + evaluator.evaluate(beads, CellValue.O, opponent));
+                }
+                break;
+
                 case "5":
                 menace = new ComputerMenacePlayer();
                 players[0] = menace;
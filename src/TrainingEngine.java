@@ -0,0 +1,324 @@
+package src;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import src.common.*;
+import src.Gameboards.*;
+import src.Players.*;
+
+//Headless training of MENACE brains: every match (a pair of players) plays its games on its own thread, and the matches run in parallel
+public class TrainingEngine {
+
+    //The kind of player a MENACE brain is trained against
+    public enum Opponent { RANDOM, PERFECT, MENACE }
+
+    //Number of games played by each match
+    private final int games;
+
+    //Number of matches played at the same time
+    private final int threads;
+
+    //Opponent given to each brain by train(ComputerMenacePlayer...), null if the engine only plays given matches
+    private final Opponent opponent;
+
+    //Board the games are played on
+    private final int lines;
+    private final int columns;
+    private final int sizeWin;
+
+    //File a PERFECT opponent reads the outcomes of every state from, null if each opponent solves them itself
+    private Path solvedFile;
+
+    //Matchboxes kept by a MENACE opponent on a board that is not enumerated
+    public static final int OPPONENT_MATCHBOXES = 1 << 20;
+
+    //Matchboxes kept by default by a brain built by newBrain on a board that is not enumerated
+    public static final int BRAIN_MATCHBOXES = 1 << 20;
+
+    public TrainingEngine(int games, int threads) {
+        this(games, threads, null);
+    }
+
+    public TrainingEngine(int games, int threads, Opponent opponent) {
+        this(games, threads, opponent, 3, 3, 3);
+    }
+
+    public TrainingEngine(int games, int threads, Opponent opponent, int lines, int columns, int sizeWin) {
+        if(games < 0 || threads < 1) {
+            throw new IllegalArgumentException("Illegal training: " + games + " games on " + threads + " threads");
+        }
+        this.games = games;
+        this.threads = threads;
+        this.opponent = opponent;
+        this.lines = lines;
+        this.columns = columns;
+        this.sizeWin = sizeWin;
+    }
+
+    //Builds a new player of the given kind
+    public static Player newOpponent(Opponent type) {
+        return newOpponent(type, 3, 3, 3);
+    }
+
+    //Builds a new player of the given kind for the given board, searching or creating matchboxes on demand if it is not 3x3
+    public static Player newOpponent(Opponent type, int lines, int columns, int sizeWin) {
+        boolean classic = lines == 3 && columns == 3 && sizeWin == 3;
+        switch(type) {
+            case RANDOM:
+                return new ComputerRandomPlayer();
+            case PERFECT:
+                return classic ? new ComputerPerfectPlayer() : new ComputerPerfectPlayer(lines, columns, sizeWin);
+            case MENACE:
+                return classic ? new ComputerMenacePlayer() : new ComputerMenacePlayer(lines, columns, sizeWin, OPPONENT_MATCHBOXES);
+            default:
+                throw new IllegalArgumentException("Unknown opponent " + type);
+        }
+    }
+
+    /**
+     * makes every PERFECT opponent built from now on read its outcomes
+     * from a solved table, for boards small enough to be enumerated.
+     * The table is solved and saved right away if the file does not
+     * exist yet, so that the opponents only ever read it.
+     * @throws IOException
+     *  if the file cannot be written, or holds the table of another board
+     */
+    public void setSolvedFile(Path file) throws IOException {
+        ComputerPerfectPlayer.solve(StateGraph.of(lines, columns, sizeWin), file);
+        solvedFile = file;
+    }
+
+    //Helper method building a new opponent of the engine's type for the engine's board
+    private Player newOpponent() {
+        if(opponent != Opponent.PERFECT || solvedFile == null) {
+            return newOpponent(opponent, lines, columns, sizeWin);
+        }
+        try {
+            return new ComputerPerfectPlayer(StateGraph.of(lines, columns, sizeWin), solvedFile);
+        } catch(IOException e) {
+            throw new UncheckedIOException(e);
+        }
+    }
+
+    //Builds a new MENACE brain for the engine's board whose counts take the given size, creating its matchboxes on demand if the board is not 3x3
+    public ComputerMenacePlayer newBrain(BeadStore.CounterSize counterSize) {
+        return newBrain(counterSize, BRAIN_MATCHBOXES);
+    }
+
+    //Same as above, a brain whose matchboxes are created on demand keeping at most maxMatchboxes of them after each game
+    public ComputerMenacePlayer newBrain(BeadStore.CounterSize counterSize, int maxMatchboxes) {
+        boolean classic = lines == 3 && columns == 3 && sizeWin == 3;
+        return classic ? new ComputerMenacePlayer(counterSize) : new ComputerMenacePlayer(lines, columns, sizeWin, maxMatchboxes, counterSize);
+    }
+
+    //Trains every brain against its own new opponent of the engine's opponent type, returns the number of games played
+    public long train(ComputerMenacePlayer... brains) {
+        if(opponent == null) {
+            throw new IllegalStateException("No opponent type given to the engine");
+        }
+        Player[][] matches = new Player[brains.length][];
+        for(int i = 0; i < brains.length; i++) {
+            matches[i] = new Player[] { brains[i], newOpponent() };
+        }
+        return train(matches);
+    }
+
+    /**
+     * trains a single brain from several threads at once: every thread
+     * plays its games with its own player sharing the beads of the brain,
+     * against its own opponent, and all of them learn into the same
+     * matchboxes without locking. Prints the results of the brain
+     * summed over every thread once they are all over.
+     * @return
+     *  the total number of games played
+     */
+    public long trainShared(ComputerMenacePlayer brain) {
+        if(opponent == null) {
+            throw new IllegalStateException("No opponent type given to the engine");
+        }
+        Player[][] matches = new Player[threads][];
+        for(int i = 0; i < threads; i++) {
+            matches[i] = new Player[] { (i == 0) ? brain : new ComputerMenacePlayer(brain), newOpponent() };
+        }
+        long played = train(matches);
+
+        //The brain keeps the results of its earlier games, the players built to share it start from none
+        long wins = 0;
+        long losses = 0;
+        long draws = 0;
+        for(Player[] match: matches) {
+            wins += match[0].getNumberOfWin();
+            losses += match[0].getNumberOfLoss();
+            draws += match[0].getNumberOfDraw();
+        }
+        System.out.println("Over all threads, the shared brain has won " + wins + " games, lost " + losses + " games and " + draws + " were draws.");
+        return played;
+    }
+
+    /**
+     * plays the engine's number of games for each match, a match being
+     * a pair of players. Players keep the state of the game they are
+     * playing, so a player can only be part of one match. Prints the
+     * number of games played per second once every match is over.
+     * @return
+     *  the total number of games played
+     */
+    public long train(Player[][] matches) {
+        IdentityHashMap<Player, Player> seen = new IdentityHashMap<Player, Player>();
+        for(Player[] match: matches) {
+            if(match.length != 2 || match[0] == match[1]) {
+                throw new IllegalArgumentException("A match needs 2 different players");
+            }
+            for(Player player: match) {
+                if(seen.put(player, player) != null) {
+                    throw new IllegalArgumentException("A player can only be part of one match");
+                }
+            }
+        }
+
+        long start = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(Math.min(threads, Math.max(matches.length, 1)));
+        try {
+            List<Future<?>> results = new ArrayList<Future<?>>();
+            for(Player[] match: matches) {
+                SplittableRandom random = Utils.newRandom();
+                results.add(pool.submit(() -> playMatch(match, random)));
+            }
+            for(Future<?> result: results) {
+                result.get();
+            }
+        } catch(InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Training interrupted", e);
+        } catch(ExecutionException e) {
+            throw new IllegalStateException("Training failed", e.getCause());
+        } finally {
+            pool.shutdownNow();
+        }
+
+        long played = (long)games*matches.length;
+        double seconds = (System.nanoTime() - start)/1e9;
+        System.out.printf("%d games in %.3f s (%.0f games/sec)%n", played, seconds, played/Math.max(seconds, 1e-9));
+        return played;
+    }
+
+    //Plays the games of one match, the first player alternating from one game to the next
+    private void playMatch(Player[] players, SplittableRandom random) {
+        BoardShape shape = BoardShape.of(lines, columns, sizeWin);
+        int first = random.nextInt(2);
+        for(int numberOfPlays = games; numberOfPlays > 0; numberOfPlays--) {
+            TicTacToeGame game = new TicTacToeGame(shape);
+            int turn = (first++)%2;
+            players[turn%2].startNewGame(CellValue.X);      //Determines who gets X
+            players[(turn+1)%2].startNewGame(CellValue.O);  //Determines who gets O
+            while(game.getGameState() == GameState.PLAYING) {
+                players[turn%2].play(game);
+                turn++;
+            }
+            players[0].gameFinished(game.getGameState());
+            players[1].gameFinished(game.getGameState());
+        }
+    }
+
+    /**
+     * Trains MENACE brains without any interaction:
+     * TrainingEngine [--shared | --mapped=file] [--counters=size] [--board=LxCxW [--matchboxes=n]]
+     *   [--solved=file] [games [threads [opponent [brains [seed]]]]]
+     * opponent being RANDOM, PERFECT or MENACE, and size the size of
+     * the bead counts of the brains: BYTE, SHORT or INT (the default,
+     * and the only size a mapped brain takes). --board plays on L
+     * lines and C columns, W to win, instead of 3x3x3: the brains
+     * then create their matchboxes on demand, keeping at most n of
+     * them after each game (2^20 by default), and cannot be shared
+     * or mapped. With --solved, a PERFECT opponent reads its outcomes
+     * from the given file, solved and saved first if it does not
+     * exist yet, which needs a board small enough to be enumerated.
+     * Defaults to 100000 games against the perfect player for one
+     * brain per core.
+     * With a seed, the same arguments train the same brains whatever
+     * the number of threads. With --shared, a single brain (unless
+     * more are asked for, trained one after the other) is trained by
+     * all the threads at once, games being counted per thread and
+     * results summed over every thread. With --mapped, a single brain kept in the given file is trained
+     * that way, and other processes can train the same file meanwhile.
+     */
+    public static void main(String[] args) throws IOException {
+        boolean shared = false;
+        Path brainFile = null;
+        Path solvedFile = null;
+        BeadStore.CounterSize counterSize = BeadStore.CounterSize.INT;
+        int[] board = { 3, 3, 3 };
+        int matchboxes = BRAIN_MATCHBOXES;
+        int options = 0;
+        for(; options < args.length && args[options].startsWith("--"); options++) {
+            String option = args[options];
+            if(option.equals("--shared")) {
+                shared = true;
+            } else if(option.startsWith("--mapped=")) {
+                brainFile = Paths.get(option.substring("--mapped=".length()));
+            } else if(option.startsWith("--solved=")) {
+                solvedFile = Paths.get(option.substring("--solved=".length()));
+            } else if(option.startsWith("--counters=")) {
+                counterSize = BeadStore.CounterSize.valueOf(option.substring("--counters=".length()).toUpperCase());
+            } else if(option.startsWith("--board=")) {
+                String[] sizes = option.substring("--board=".length()).toLowerCase().split("x");
+                if(sizes.length != 3) {
+                    throw new IllegalArgumentException("Expected --board=LxCxW, got " + option);
+                }
+                for(int i = 0; i < 3; i++) {
+                    board[i] = Integer.parseInt(sizes[i]);
+                }
+            } else if(option.startsWith("--matchboxes=")) {
+                matchboxes = Integer.parseInt(option.substring("--matchboxes=".length()));
+            } else {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+        }
+        if(brainFile != null && counterSize != BeadStore.CounterSize.INT) {
+            throw new IllegalArgumentException("A mapped brain keeps int counts");
+        }
+        boolean classic = board[0] == 3 && board[1] == 3 && board[2] == 3;
+        if(!classic && (shared || brainFile != null)) {
+            throw new IllegalArgumentException("Only 3x3 brains can be shared or mapped");
+        }
+        args = Arrays.copyOfRange(args, options, args.length);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int games = (args.length > 0) ? Integer.parseInt(args[0]) : 100000;
+        int threads = (args.length > 1) ? Integer.parseInt(args[1]) : cores;
+        Opponent opponent = (args.length > 2) ? Opponent.valueOf(args[2].toUpperCase()) : Opponent.PERFECT;
+        int count = (brainFile != null) ? 1 : (args.length > 3) ? Integer.parseInt(args[3]) : shared ? 1 : threads;
+        if(args.length > 4) {
+            Utils.setSeed(Long.parseLong(args[4]));
+        }
+
+        TrainingEngine engine = new TrainingEngine(games, threads, opponent, board[0], board[1], board[2]);
+        if(solvedFile != null) {
+            engine.setSolvedFile(solvedFile);
+        }
+        ComputerMenacePlayer[] brains = new ComputerMenacePlayer[count];
+        for(int i = 0; i < count; i++) {
+            brains[i] = (brainFile != null) ? new ComputerMenacePlayer(brainFile) : engine.newBrain(counterSize, matchboxes);
+        }
+        if(shared || brainFile != null) {
+            for(ComputerMenacePlayer brain: brains) {
+                engine.trainShared(brain);
+            }
+        } else {
+            engine.train(brains);
+            for(int i = 0; i < count; i++) {
+                System.out.println("brain " + (i+1) + ": " + brains[i]);
+            }
+        }
+    }
+
+}
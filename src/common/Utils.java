@@ -1,12 +1,43 @@
 package src.common;
-import java.util.Random;
+import java.util.SplittableRandom;
 import java.io.Console;
 
 public class Utils {
-	public static final Random generator = new Random();
+
+	//Every random stream of the application is split from this one, seeded by the "menace.seed" property when it is set
+	private static SplittableRandom masterRandom = newMasterRandom(System.getProperty("menace.seed"));
+
 	public static final Console console = System.console();
 	public static final String NEW_LINE = System.getProperty("line.separator");
 
+	/**
+	 * returns a new random stream, independent from every other one.
+	 * Each player, game loop or thread takes its own stream, so that
+	 * nothing is shared while playing, and the same master seed
+	 * with the same creation order replays the same games.
+	 */
+	public static synchronized SplittableRandom newRandom(){
+		return masterRandom.split();
+	}
+
+	//Helper method building the master stream from the value of the "menace.seed" property, unseeded if it is not a number
+	private static SplittableRandom newMasterRandom(String seed){
+		if(seed == null){
+			return new SplittableRandom();
+		}
+		try {
+			return new SplittableRandom(Long.parseLong(seed.trim()));
+		} catch(NumberFormatException e) {
+			System.err.println("Ignoring menace.seed=" + seed + ", which is not a number: the games will not be repeatable");
+			return new SplittableRandom();
+		}
+	}
+
+	//Restarts the master stream from the given seed, for the streams created afterwards
+	public static synchronized void setSeed(long seed){
+		masterRandom = new SplittableRandom(seed);
+	}
+
 
 
     /**
@@ -39,16 +70,16 @@ public class Utils {
     		throw new IllegalArgumentException("Rotate called with incorrect arguments");
     	}
 
-    	int[] tmp;
-    	tmp = new int[transformedBoard.length];
-
-    	for(int i =0 ; i < transformedBoard.length; i++) {
-	                tmp[i] = transformedBoard[i];
-	    }
-
-    	for(int i =0 ; i < columns; i++) {
-    		for(int j = 0; j < lines ; j++) {
-    			transformedBoard[j*lines+i]=tmp[(columns-i-1)*lines+j];
+    	//Rotates the board in place, one ring at a time, by moving the 4 cells of each cycle
+    	int n = lines;
+    	int tmp;
+    	for(int r = 0; r < n/2; r++) {
+    		for(int c = r; c < n-1-r; c++) {
+    			tmp = transformedBoard[r*n + c];
+    			transformedBoard[r*n + c] = transformedBoard[(n-1-c)*n + r];
+    			transformedBoard[(n-1-c)*n + r] = transformedBoard[(n-1-r)*n + (n-1-c)];
+    			transformedBoard[(n-1-r)*n + (n-1-c)] = transformedBoard[c*n + (n-1-r)];
+    			transformedBoard[c*n + (n-1-r)] = tmp;
     		}
 	    }
 